@@ -0,0 +1,81 @@
+package bench;
+
+import generic.Matrix;
+import generic.Scalar;
+import generic.Value;
+import generic.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boxed Matrix/Vector operations of the generic package
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatrixBench {
+
+    @Param({"4", "16", "64"})
+    int dimension;
+
+    Matrix<Value> a, b;
+    Vector<Value> u, v;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        a = randomMatrix(random, true);
+        b = randomMatrix(random, false);
+        u = randomVector(random);
+        v = randomVector(random);
+    }
+
+    private Matrix<Value> randomMatrix(Random random, boolean diagonallyDominant) {
+        Scalar[][] values = new Scalar[dimension][dimension];
+        for (int r = 0; r < dimension; r++) {
+            for (int c = 0; c < dimension; c++) {
+                double value = random.nextDouble() - 0.5;
+                if (diagonallyDominant && r == c) value += dimension;   // Keeps inverse() well conditioned
+                values[r][c] = new Scalar(value);
+            }
+        }
+        return new Matrix<>(values).toValues();
+    }
+
+    private Vector<Value> randomVector(Random random) {
+        double[] values = new double[dimension];
+        for (int i = 0; i < dimension; i++) values[i] = random.nextDouble() - 0.5;
+        return new Vector<>(Scalar.array(values)).toValues();
+    }
+
+    @Benchmark
+    public Matrix<Value> multiply() {
+        return a.multiply(b);
+    }
+
+    @Benchmark
+    public Matrix<Value> inverse() {
+        return a.inverse();
+    }
+
+    @Benchmark
+    public Value dot() {
+        return u.dot(v);
+    }
+
+}
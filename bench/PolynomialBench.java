@@ -0,0 +1,100 @@
+package bench;
+
+import calc.NFunctionMatrix;
+import calc.NFunctionVector;
+import calc.NPolynomial;
+import generic.Scalar;
+import generic.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing, evaluating and differentiating the chained P10 problems
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PolynomialBench {
+
+    @Param({"F3", "F4"})
+    String problem;
+
+    @Param({"2", "8", "32"})
+    int dimension;
+
+    String form;
+    NPolynomial polynomial;
+    Vector<Scalar> point;
+    double[] x, gradient;
+
+    @Setup
+    public void setup() {
+        form = Problems.form(problem, dimension);
+        polynomial = NPolynomial.fromString(form);
+        x = Problems.start(problem, dimension);
+        gradient = new double[dimension];
+        point = new Vector<>(Scalar.array(x));
+    }
+
+    @Benchmark
+    public NPolynomial fromString() {
+        return NPolynomial.fromString(form);
+    }
+
+    @Benchmark
+    public Scalar value() {
+        return polynomial.value(point);
+    }
+
+    @Benchmark
+    public double valuePrimitive() {
+        return polynomial.value(x);
+    }
+
+    @Benchmark
+    public double valueAndGradient() {
+        return polynomial.valueAndGradient(x, gradient);
+    }
+
+    /**
+     * A polynomial parsed anew for every invocation, NPolynomial remembers its derivatives
+     * so deriving from the shared one would only time a field read
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+
+        NPolynomial polynomial;
+
+        @Setup(Level.Invocation)
+        public void setup(PolynomialBench bench) {
+            polynomial = NPolynomial.fromString(bench.form);
+        }
+
+    }
+
+    @Benchmark
+    public NFunctionVector gradient(Fresh fresh) {
+        return fresh.polynomial.gradient(dimension);
+    }
+
+    @Benchmark
+    public NFunctionMatrix hessian(Fresh fresh) {
+        return fresh.polynomial.hessian(dimension);
+    }
+
+}
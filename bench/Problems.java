@@ -0,0 +1,74 @@
+package bench;
+
+import calc.NPolynomial;
+
+/**
+ * The P10 test problems F1-F4, chained to any dimension n >= 2. At n = 2 each is the original problem.
+ */
+final class Problems {
+
+    private Problems() {
+    }
+
+    static String form(String problem, int n) {
+        if (n < 2) throw new RuntimeException("Problems need at least two variables");
+        StringBuilder sb = new StringBuilder();
+        switch (problem) {
+            case "F1":
+                // sum x[i]^2
+                for (int i = 1; i <= n; i++) term(sb, "x["+i+"]^2");
+                break;
+            case "F2":
+                // sum x[i]^2 + 2*x[i+1]^2 - 2*x[i]*x[i+1] - 2*x[i+1]
+                for (int i = 1; i < n; i++) {
+                    int j = i+1;
+                    term(sb, "x["+i+"]^2 + 2*x["+j+"]^2 - 2*x["+i+"]*x["+j+"] - 2*x["+j+"]");
+                }
+                break;
+            case "F3":
+                // Rosenbrock, sum 100*(x[i+1] - x[i]^2)^2 + (1 - x[i])^2
+                for (int i = 1; i < n; i++) {
+                    int j = i+1;
+                    term(sb, "100*x["+j+"]^2 - 200*x["+i+"]^2*x["+j+"] + 100*x["+i+"]^4 + 1 - 2*x["+i+"] + x["+i+"]^2");
+                }
+                break;
+            case "F4":
+                // sum (x[i] + x[i+1])^4 + x[i+1]^2
+                for (int i = 1; i < n; i++) {
+                    int j = i+1;
+                    term(sb, "x["+i+"]^4 + 4*x["+i+"]^3*x["+j+"] + 6*x["+i+"]^2*x["+j+"]^2 + 4*x["+i+"]*x["+j+"]^3 + x["+j+"]^4 + x["+j+"]^2");
+                }
+                break;
+            default:
+                throw new RuntimeException("Unknown problem "+problem);
+        }
+        return sb.toString();
+    }
+
+    static NPolynomial polynomial(String problem, int n) {
+        return NPolynomial.fromString(form(problem, n));
+    }
+
+    /**
+     * The P10 start point repeated along the chain
+     */
+    static double[] start(String problem, int n) {
+        double odd, even;
+        switch (problem) {
+            case "F1": odd = 1;    even = 1;   break;
+            case "F2": odd = 1;    even = 0.5; break;
+            case "F3": odd = -1.2; even = 1;   break;
+            case "F4": odd = 2;    even = -2;  break;
+            default: throw new RuntimeException("Unknown problem "+problem);
+        }
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) x[i] = (i % 2 == 0) ? odd : even;
+        return x;
+    }
+
+    private static void term(StringBuilder sb, String term) {
+        if (sb.length() > 0) sb.append(" + ");
+        sb.append(term);
+    }
+
+}
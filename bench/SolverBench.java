@@ -0,0 +1,72 @@
+package bench;
+
+import calc.NPolynomial;
+import generic.DenseVector;
+import generic.Scalar;
+import generic.Vector;
+import main.MultiStartOptimizer;
+import main.Optimizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full solves of the chained P10 problems. Derivatives are taken once in setup,
+ * each invocation resets the solver to the start point and iterates to convergence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SolverBench {
+
+    // Bounds the slow cases, e.g. steepest descent on Rosenbrock
+    static final int MAX_ITERATIONS = 20000;
+
+    @Param({"SteepestDescent", "NewtonMethod", "BFGSQuasiNewton", "ConjugateGradient", "LBFGS"})
+    String solver;
+
+    @Param({"F1", "F2", "F3", "F4"})
+    String problem;
+
+    @Param({"2", "8", "32"})
+    int dimension;
+
+    Optimizer optimizer;
+    double[] start;
+
+    @Setup
+    public void setup() {
+        NPolynomial func = Problems.polynomial(problem, dimension);
+        MultiStartOptimizer.SolverFactory factory;
+        switch (solver) {
+            case "SteepestDescent":   factory = MultiStartOptimizer.steepestDescent(func, dimension); break;
+            case "NewtonMethod":      factory = MultiStartOptimizer.newton(func, dimension); break;
+            case "BFGSQuasiNewton":   factory = MultiStartOptimizer.bfgs(func, dimension, true); break;
+            case "ConjugateGradient": factory = MultiStartOptimizer.conjugateGradient(func, dimension); break;
+            case "LBFGS":             factory = MultiStartOptimizer.lbfgs(func, 10); break;
+            default: throw new RuntimeException("Unknown solver "+solver);
+        }
+        start = Problems.start(problem, dimension);
+        optimizer = factory.create(new Vector<>(Scalar.array(start)));
+    }
+
+    @Benchmark
+    public DenseVector solve() {
+        optimizer.reset(start);
+        return optimizer.solve(MAX_ITERATIONS);
+    }
+
+}
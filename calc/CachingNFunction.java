@@ -0,0 +1,293 @@
+package calc;
+
+import generic.DenseMatrix;
+import generic.Scalar;
+import generic.Value;
+import generic.Vector;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator remembering the value, gradient and Hessian of a function at recently used points.
+ * Points match only on their exact bit patterns. The cache is split into stripes, each an LRU map
+ * behind its own lock, so threads sharing one instance rarely contend. Evaluation happens outside
+ * the locks: two threads missing on the same point may both evaluate it.
+ * The gradient and hessian returned evaluate through the cache too, derivative does not.
+ */
+public class CachingNFunction implements NFunction {
+
+	/**
+	 * Results known at one point, replaced rather than modified so readers need no lock
+	 */
+	static final class Entry {
+
+		final boolean hasValue;
+		final double value;
+		final double[] gradient;	// null until asked for
+		final double[] hessian;		// Row-major, null until asked for
+
+		Entry(boolean hasValue, double value, double[] gradient, double[] hessian) {
+			this.hasValue = hasValue;
+			this.value = value;
+			this.gradient = gradient;
+			this.hessian = hessian;
+		}
+
+	}
+
+	static final class Key {
+
+		final long[] bits;
+		final int hash;
+
+		Key(double[] x) {
+			bits = new long[x.length];
+			for (int i = 0; i < x.length; i++) bits[i] = Double.doubleToRawLongBits(x[i]);
+			int h = Arrays.hashCode(bits);
+			hash = h ^ (h >>> 16);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof Key && Arrays.equals(bits, ((Key) other).bits);
+		}
+
+	}
+
+	/**
+	 * LRU map in access order, callers lock on the stripe
+	 */
+	final class Stripe {
+
+		final LinkedHashMap<Key, Entry> map;
+
+		Stripe(int capacity) {
+			this.map = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+					if (size() <= capacity) return false;
+					evictions.increment();
+					return true;
+				}
+			};
+		}
+
+	}
+
+	final NFunction func;
+	final Stripe[] stripes;
+	final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+	public CachingNFunction(NFunction func, int capacity) {
+		this(func, capacity, Math.min(16, capacity));
+	}
+
+	/**
+	 * @param capacity points kept in total, split evenly between the stripes
+	 * @param stripes independently locked parts, rounded up to a power of two
+	 */
+	public CachingNFunction(NFunction func, int capacity, int stripes) {
+		if (capacity < 1 || stripes < 1) throw new RuntimeException("Cache needs a positive capacity and stripe count");
+		int count = Integer.highestOneBit(stripes);
+		if (count < stripes) count <<= 1;
+		this.func = func;
+		this.stripes = new Stripe[count];
+		int each = (capacity + count - 1) / count;
+		for (int i = 0; i < count; i++) this.stripes[i] = new Stripe(each);
+	}
+
+	public NFunction getFunction() {
+		return func;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public double getHitRate() {
+		long hit = hits.sum(), total = hit + misses.sum();
+		return (total == 0) ? 0 : (double) hit / total;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Forgets every point, the statistics are kept
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.map.clear();
+			}
+		}
+	}
+
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	private Stripe stripe(Key key) {
+		return stripes[key.hash & (stripes.length-1)];
+	}
+
+	private Entry lookup(Key key) {
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			return stripe.map.get(key);
+		}
+	}
+
+	/**
+	 * Stores the entry, keeping whatever a concurrent miss on the same point added meanwhile
+	 */
+	private void store(Key key, Entry entry) {
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			Entry old = stripe.map.get(key);
+			if (old != null) {
+				double[] gradient = entry.gradient;
+				if (gradient == null || (old.gradient != null && old.gradient.length > gradient.length)) gradient = old.gradient;
+				double[] hessian = (entry.hessian != null) ? entry.hessian : old.hessian;
+				if (entry.hasValue) entry = new Entry(true, entry.value, gradient, hessian);
+				else entry = new Entry(old.hasValue, old.value, gradient, hessian);
+			}
+			stripe.map.put(key, entry);
+		}
+	}
+
+	public double value(double[] x) {
+		Key key = new Key(x);
+		Entry entry = lookup(key);
+		if (entry != null && entry.hasValue) {
+			hits.increment();
+			return entry.value;
+		}
+		misses.increment();
+		double value = func.value(x);
+		store(key, new Entry(true, value, null, null));
+		return value;
+	}
+
+	public double valueAndGradient(double[] x, double[] gradOut) {
+		Key key = new Key(x);
+		Entry entry = lookup(key);
+		if (entry != null && entry.gradient != null && entry.gradient.length >= gradOut.length) {
+			hits.increment();
+			System.arraycopy(entry.gradient, 0, gradOut, 0, gradOut.length);
+			return entry.value;
+		}
+		misses.increment();
+		double value = func.valueAndGradient(x, gradOut);
+		store(key, new Entry(true, value, gradOut.clone(), null));
+		return value;
+	}
+
+	/**
+	 * Hessian at x of size out.getRows(), computed with the given symbolic form on a miss
+	 */
+	void hessian(double[] x, DenseMatrix out, SparseHessian symbolic) {
+		Key key = new Key(x);
+		Entry entry = lookup(key);
+		int size = out.getSize();
+		if (entry != null && entry.hessian != null && entry.hessian.length == size) {
+			hits.increment();
+			for (int i = 0; i < size; i++) out.set(i, entry.hessian[i]);
+			return;
+		}
+		misses.increment();
+		symbolic.value(x, out);
+		double[] hessian = new double[size];
+		for (int i = 0; i < size; i++) hessian[i] = out.get(i);
+		store(key, new Entry(false, Double.NaN, null, hessian));
+	}
+
+	public Scalar value(Vector<Scalar> x) {
+		double[] point = new double[x.getSize()];
+		for (int i = 0; i < point.length; i++) point[i] = x.get(i).value();
+		return new Scalar(value(point));
+	}
+
+	public NFunction derivative(int varIndex) {
+		return func.derivative(varIndex);
+	}
+
+	public NFunctionVector gradient(int maxIndex) {
+		NFunctionVector symbolic = func.gradient(maxIndex);
+		NFunction[] values = new NFunction[symbolic.getSize()];
+		for (int i = 0; i < values.length; i++) values[i] = symbolic.get(i);
+		return new NFunctionVector(values, false) {
+			public void value(double[] x, double[] out) {
+				if (out.length != getSize()) throw new RuntimeException("Function vector bad dimensions");
+				valueAndGradient(x, out);
+			}
+		};
+	}
+
+	public NFunctionMatrix hessian(int maxIndex) {
+		return sparseHessian(maxIndex).toMatrix();
+	}
+
+	public SparseHessian sparseHessian(int maxIndex) {
+		SparseHessian symbolic = func.sparseHessian(maxIndex);
+		return new SparseHessian(symbolic) {
+			public void value(double[] x, DenseMatrix out) {
+				if (out.getRows() != size || out.getCols() != size) throw new RuntimeException("Hessian bad dimensions");
+				hessian(x, out, symbolic);
+			}
+		};
+	}
+
+	// Batches are already one sweep per term, looking up every point would only add overhead
+
+	public void evaluateBatch(double[] points, double[] out) {
+		func.evaluateBatch(points, out);
+	}
+
+	public void gradientBatch(double[] points, double[] values, double[] gradOut) {
+		func.gradientBatch(points, values, gradOut);
+	}
+
+	public Value negate() {
+		return func.negate();
+	}
+
+	public Value reciprocal() {
+		return func.reciprocal();
+	}
+
+	public Value add(Value other) {
+		return func.add(other);
+	}
+
+	public Value multiply(Value other) {
+		return func.multiply(other);
+	}
+
+	public String toString() {
+		return func.toString();
+	}
+
+}
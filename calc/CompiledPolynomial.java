@@ -0,0 +1,353 @@
+package calc;
+
+import generic.Kernels;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable flat-array form of an NPolynomial for fast repeated evaluation.
+ * Terms are stored CSR-style: the factors of term t are entries termStart[t] to termStart[t+1]-1
+ * of the variables/exponents arrays.
+ * Each variable raised to integer powers gets a table of x^low to x^high, filled once per point, so a factor
+ * is a lookup however many terms share it. Single-point evaluation reuses a per-thread table and allocates nothing.
+ */
+public final class CompiledPolynomial implements PolynomialEvaluator {
+
+	static final int NON_INTEGER = Integer.MIN_VALUE;
+	static final int MAX_TABLE_POWER = 64;		// Larger powers go through pow
+	static final int MAX_BATCH_TABLE = 1 << 22;	// Doubles, batches needing larger tables work factor by factor
+
+	private static final ThreadLocal<double[]> SCRATCH = ThreadLocal.withInitial(() -> new double[0]);
+
+	final double[] coefficients;
+	final int[] termStart;
+	final int[] variables;		// 0-based index into x, i.e. variable index - 1
+	final int[] intExponents;	// NON_INTEGER where the exponent is not an integer
+	final double[] exponents;
+	final int maxIndex;
+
+	// Power tables: powerIndex[k] is where x^p of factor k sits, -1 if it is not tabulated.
+	// Variable tableVariables[j] holds x^tableLow[j] to x^tableHigh[j], with x^0 at tableZero[j].
+	// A negative low is one below the lowest power so x^(p-1) is there for derivatives.
+	final int[] powerIndex;
+	final int[] tableVariables, tableLow, tableHigh, tableZero;
+	final int tableSize;
+
+	CompiledPolynomial(List<NPolyTerm> terms) {
+		int factors = 0;
+		for (NPolyTerm term : terms) factors += term.variables().length;
+
+		this.coefficients = new double[terms.size()];
+		this.termStart = new int[terms.size()+1];
+		this.variables = new int[factors];
+		this.intExponents = new int[factors];
+		this.exponents = new double[factors];
+
+		int k = 0, max = 0;
+		for (int t = 0; t < terms.size(); t++) {
+			NPolyTerm term = terms.get(t);
+			coefficients[t] = term.coefficient;
+			termStart[t] = k;
+			int[] vars = term.variables();
+			double[] exps = term.exponents();
+			for (int i = 0; i < vars.length; i++, k++) {
+				variables[k] = vars[i]-1;
+				exponents[k] = exps[i];
+				intExponents[k] = isInteger(exps[i]) ? (int) exps[i] : NON_INTEGER;
+				if (vars[i] > max) max = vars[i];
+			}
+		}
+		termStart[terms.size()] = k;
+		this.maxIndex = max;
+
+		// Range of tabulated powers per variable
+		int[] low = new int[max], high = new int[max];
+		boolean[] used = new boolean[max];
+		for (k = 0; k < factors; k++) {
+			int power = intExponents[k], v = variables[k];
+			if (power == NON_INTEGER || Math.abs(power) > MAX_TABLE_POWER) continue;
+			used[v] = true;
+			if (power < 0) low[v] = Math.min(low[v], power-1);
+			else high[v] = Math.max(high[v], power);
+		}
+		int count = 0;
+		for (boolean u : used) if (u) count++;
+		this.tableVariables = new int[count];
+		this.tableLow = new int[count];
+		this.tableHigh = new int[count];
+		this.tableZero = new int[count];
+		int[] zero = new int[max];
+		int size = 0;
+		for (int v = 0, j = 0; v < max; v++) {
+			if (!used[v]) continue;
+			tableVariables[j] = v;
+			tableLow[j] = low[v];
+			tableHigh[j] = high[v];
+			tableZero[j] = zero[v] = size - low[v];
+			size += high[v] - low[v] + 1;
+			j++;
+		}
+		this.tableSize = size;
+		this.powerIndex = new int[factors];
+		for (k = 0; k < factors; k++) {
+			int power = intExponents[k];
+			boolean tabulated = power != NON_INTEGER && Math.abs(power) <= MAX_TABLE_POWER;
+			powerIndex[k] = tabulated ? zero[variables[k]] + power : -1;
+		}
+	}
+
+	/**
+	 * Per-thread table for single points, shared by all polynomials since evaluation does not nest
+	 */
+	private double[] powers(double[] x) {
+		double[] table = SCRATCH.get();
+		if (table.length < tableSize) {
+			table = new double[Math.max(tableSize, 2*table.length)];
+			SCRATCH.set(table);
+		}
+		fillPowers(x, table);
+		return table;
+	}
+
+	/**
+	 * Fills every variable's table through pow, so results match evaluating each factor on its own
+	 */
+	private void fillPowers(double[] x, double[] table) {
+		for (int j = 0; j < tableVariables.length; j++) {
+			double value = x[tableVariables[j]];
+			int zero = tableZero[j];
+			for (int i = tableLow[j]; i <= tableHigh[j]; i++) table[zero+i] = pow(value, i);
+		}
+	}
+
+	static boolean isInteger(double exponent) {
+		return exponent == Math.rint(exponent) && Math.abs(exponent) < (1 << 30);
+	}
+
+	/**
+	 * Highest variable index used, x passed to eval must have at least this many entries
+	 */
+	public int getMaxIndex() {
+		return maxIndex;
+	}
+
+	public int getTermCount() {
+		return coefficients.length;
+	}
+
+	public double eval(double[] x) {
+		if (x.length < maxIndex) throw new RuntimeException("Polynomial needs "+maxIndex+" variables, got "+x.length);
+		double[] powers = powers(x);
+		double sum = 0;
+		for (int t = 0; t < coefficients.length; t++) {
+			double product = coefficients[t];
+			for (int k = termStart[t]; k < termStart[t+1]; k++) {
+				int index = powerIndex[k];
+				product *= (index >= 0) ? powers[index] : factor(x[variables[k]], k);
+			}
+			sum += product;
+		}
+		return sum;
+	}
+
+	/**
+	 * Value and gradient in one sweep over the terms, reverse-mode style. The forward pass forms each
+	 * term's product, the reverse pass hands every factor its adjoint, the product of the other factors.
+	 * Writes df/dx[i+1] into gradOut[i] for i < gradOut.length.
+	 */
+	public double valueAndGradient(double[] x, double[] gradOut) {
+		if (x.length < maxIndex) throw new RuntimeException("Polynomial needs "+maxIndex+" variables, got "+x.length);
+		Arrays.fill(gradOut, 0);
+		double[] powers = powers(x);
+		double sum = 0;
+		for (int t = 0; t < coefficients.length; t++) {
+			int start = termStart[t], end = termStart[t+1];
+
+			// Forward, product of the non-vanishing factors
+			double others = coefficients[t];
+			int zeros = 0, zeroAt = -1;
+			for (int k = start; k < end; k++) {
+				int index = powerIndex[k];
+				double f = (index >= 0) ? powers[index] : factor(x[variables[k]], k);
+				if (f == 0) {
+					zeros++;
+					zeroAt = k;
+				} else {
+					others *= f;
+				}
+			}
+
+			// Reverse, d(x^p)/dx = (p/x)*x^p so each adjoint is the term value scaled by p/x
+			if (zeros == 0) {
+				sum += others;
+				for (int k = start; k < end; k++) {
+					int v = variables[k];
+					if (v < gradOut.length) gradOut[v] += others * exponents[k] / x[v];
+				}
+			} else if (zeros == 1) {
+				// Term value is 0, only the vanishing factor has a non-zero adjoint
+				int v = variables[zeroAt], index = powerIndex[zeroAt];
+				double d = (index >= 0) ? intExponents[zeroAt] * powers[index-1] : derivative(x[v], zeroAt);
+				if (v < gradOut.length) gradOut[v] += others * d;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Evaluates out.length points at once. Points are structure-of-arrays: variable i+1 of point p is
+	 * points[i*out.length + p]. The loop is term-major, so each term's exponent data is read once per batch
+	 * and the inner loops run across points, where they can be vectorized.
+	 */
+	public void evaluateBatch(double[] points, double[] out) {
+		int count = out.length;
+		checkBatch(points, count);
+		Arrays.fill(out, 0);
+		double[] term = new double[count];
+		double[] powers = batchPowers(points, count);
+		Kernels kernels = Kernels.get();
+		for (int t = 0; t < coefficients.length; t++) {
+			Arrays.fill(term, coefficients[t]);
+			for (int k = termStart[t]; k < termStart[t+1]; k++) {
+				multiplyFactor(term, 0, points, powers, k, 0, count);
+			}
+			kernels.axpy(1, term, out);
+		}
+	}
+
+	/**
+	 * Values and gradients at values.length points laid out as in evaluateBatch. df/dx[i+1] at point p
+	 * is written to gradOut[i*values.length + p] for every variable that fits in gradOut.
+	 * Each term is differentiated in reverse mode: prefix products forward, one running suffix backward.
+	 */
+	public void gradientBatch(double[] points, double[] values, double[] gradOut) {
+		int count = values.length;
+		checkBatch(points, count);
+		int n = (count == 0) ? 0 : gradOut.length / count;
+		Arrays.fill(values, 0);
+		Arrays.fill(gradOut, 0);
+
+		int maxFactors = 0;
+		for (int t = 0; t < coefficients.length; t++) maxFactors = Math.max(maxFactors, termStart[t+1] - termStart[t]);
+		double[] prefix = new double[(maxFactors+1) * count];	// row j holds c*f_0*...*f_(j-1)
+		double[] suffix = new double[count];
+		double[] adjoint = new double[count];
+		double[] powers = batchPowers(points, count);
+		Kernels kernels = Kernels.get();
+
+		for (int t = 0; t < coefficients.length; t++) {
+			int start = termStart[t], factors = termStart[t+1] - start;
+			Arrays.fill(prefix, 0, count, coefficients[t]);
+			for (int j = 0; j < factors; j++) {
+				System.arraycopy(prefix, j*count, prefix, (j+1)*count, count);
+				multiplyFactor(prefix, (j+1)*count, points, powers, start+j, 0, count);
+			}
+			kernels.axpy(1, prefix, factors*count, values, 0, count);
+
+			Arrays.fill(suffix, 1);
+			for (int j = factors-1; j >= 0; j--) {
+				int k = start+j, v = variables[k];
+				if (v < n) {
+					for (int i = 0; i < count; i++) adjoint[i] = prefix[j*count+i] * suffix[i];
+					multiplyFactor(adjoint, 0, points, powers, k, 1, count);
+					kernels.axpy(exponents[k], adjoint, 0, gradOut, v*count, count);
+				}
+				if (j > 0) multiplyFactor(suffix, 0, points, powers, k, 0, count);
+			}
+		}
+	}
+
+	private void checkBatch(double[] points, int count) {
+		if (points.length < maxIndex * count) {
+			throw new RuntimeException("Batch of "+count+" points needs "+maxIndex+" variables each, got "+points.length+" values");
+		}
+	}
+
+	/**
+	 * Power tables for a batch, entry e of the single-point table becomes the count values from e*count on.
+	 * Null if that would exceed MAX_BATCH_TABLE.
+	 */
+	private double[] batchPowers(double[] points, int count) {
+		if ((long) tableSize * count > MAX_BATCH_TABLE) return null;
+		double[] table = new double[tableSize * count];
+		for (int j = 0; j < tableVariables.length; j++) {
+			int offset = tableVariables[j]*count;
+			for (int i = tableLow[j]; i <= tableHigh[j]; i++) {
+				int row = (tableZero[j] + i)*count;
+				for (int p = 0; p < count; p++) table[row+p] = pow(points[offset+p], i);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * target[targetOffset+i] *= x^(p-lower) for the exponent p of factor k, with x its variable at point i,
+	 * looked up in the batch power table when there is one
+	 */
+	private void multiplyFactor(double[] target, int targetOffset, double[] points, double[] powers, int k, int lower, int count) {
+		int offset = variables[k]*count;
+		if (powers != null && powerIndex[k] >= 0) {
+			if (intExponents[k] == lower) return;
+			int row = (powerIndex[k] - lower)*count;
+			for (int i = 0; i < count; i++) target[targetOffset+i] *= powers[row+i];
+			return;
+		}
+		int power = intExponents[k];
+		if (power == NON_INTEGER) {
+			double exponent = exponents[k] - lower;
+			for (int i = 0; i < count; i++) target[targetOffset+i] *= Math.pow(points[offset+i], exponent);
+			return;
+		}
+		power -= lower;
+		switch (power) {
+			case 0:
+				return;
+			case 1:
+				for (int i = 0; i < count; i++) target[targetOffset+i] *= points[offset+i];
+				return;
+			case 2:
+				for (int i = 0; i < count; i++) {
+					double x = points[offset+i];
+					target[targetOffset+i] *= x*x;
+				}
+				return;
+			default:
+				for (int i = 0; i < count; i++) target[targetOffset+i] *= pow(points[offset+i], power);
+		}
+	}
+
+	double factor(double value, int k) {
+		int power = intExponents[k];
+		if (power == NON_INTEGER) return Math.pow(value, exponents[k]);
+		return pow(value, power);
+	}
+
+	double derivative(double value, int k) {
+		int power = intExponents[k];
+		if (power == NON_INTEGER) return exponents[k] * Math.pow(value, exponents[k]-1);
+		return power * pow(value, power-1);
+	}
+
+	/**
+	 * Integer power by repeated multiplication
+	 */
+	static double pow(double value, int power) {
+		switch (power) {
+			case 0: return 1;
+			case 1: return value;
+			case 2: return value*value;
+			case 3: return value*value*value;
+			case 4: { double sq = value*value; return sq*sq; }
+		}
+		if (power < 0) return 1.0 / pow(value, -power);
+		double result = 1;
+		while (power != 0) {
+			if ((power & 1) != 0) result *= value;
+			value *= value;
+			power >>>= 1;
+		}
+		return result;
+	}
+
+}
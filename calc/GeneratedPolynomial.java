@@ -0,0 +1,47 @@
+package calc;
+
+import java.util.Arrays;
+
+/**
+ * Base class of the hidden classes emitted by PolynomialCodegen. Subclasses only supply the
+ * straight-line arithmetic, argument checks live here.
+ */
+abstract class GeneratedPolynomial implements PolynomialEvaluator {
+
+	int maxIndex;	// Set once by PolynomialCodegen before the instance is published
+
+	GeneratedPolynomial() {
+	}
+
+	/**
+	 * f(x), x has at least maxIndex entries
+	 */
+	abstract double value0(double[] x);
+
+	/**
+	 * f(x), writing all maxIndex partial derivatives into grad
+	 */
+	abstract double gradient0(double[] x, double[] grad);
+
+	public int getMaxIndex() {
+		return maxIndex;
+	}
+
+	public double eval(double[] x) {
+		if (x.length < maxIndex) throw new RuntimeException("Polynomial needs "+maxIndex+" variables, got "+x.length);
+		return value0(x);
+	}
+
+	public double valueAndGradient(double[] x, double[] gradOut) {
+		if (x.length < maxIndex) throw new RuntimeException("Polynomial needs "+maxIndex+" variables, got "+x.length);
+		if (gradOut.length >= maxIndex) {
+			Arrays.fill(gradOut, maxIndex, gradOut.length, 0);
+			return gradient0(x, gradOut);
+		}
+		double[] full = new double[maxIndex];
+		double value = gradient0(x, full);
+		System.arraycopy(full, 0, gradOut, 0, gradOut.length);
+		return value;
+	}
+
+}
@@ -14,4 +14,59 @@ public interface NFunction extends Value {
 
 	public NFunctionMatrix hessian(int maxIndex);
 
+	/**
+	 * Upper triangle of the Hessian without a dense maxIndex^2 array, the form solvers evaluate.
+	 * Implementations that know which second derivatives vanish should leave them out.
+	 */
+	public default SparseHessian sparseHessian(int maxIndex) {
+		return SparseHessian.of(this, maxIndex);
+	}
+
+	/**
+	 * Value at a primitive point, x[i] holds variable i+1
+	 */
+	public default double value(double[] x) {
+		return value(new Vector<>(Scalar.array(x))).value();
+	}
+
+	/**
+	 * Computes f(x) and writes df/dx[i+1] into gradOut[i] for i < gradOut.length.
+	 * Implementations should do this in one sweep, at a small constant multiple of the cost of value(x).
+	 */
+	public default double valueAndGradient(double[] x, double[] gradOut) {
+		Vector<Scalar> point = new Vector<>(Scalar.array(x));
+		Vector<Scalar> grad = gradient(gradOut.length).value(point);
+		for (int i = 0; i < gradOut.length; i++) gradOut[i] = grad.get(i).value();
+		return value(point).value();
+	}
+
+	/**
+	 * Evaluates out.length points given as structure-of-arrays: variable i+1 of point p is points[i*out.length + p]
+	 */
+	public default void evaluateBatch(double[] points, double[] out) {
+		int count = out.length;
+		if (count == 0) return;
+		double[] x = new double[points.length / count];
+		for (int p = 0; p < count; p++) {
+			for (int i = 0; i < x.length; i++) x[i] = points[i*count + p];
+			out[p] = value(x);
+		}
+	}
+
+	/**
+	 * Values and gradients at values.length points laid out as in evaluateBatch.
+	 * df/dx[i+1] at point p is written to gradOut[i*values.length + p].
+	 */
+	public default void gradientBatch(double[] points, double[] values, double[] gradOut) {
+		int count = values.length;
+		if (count == 0) return;
+		double[] x = new double[points.length / count];
+		double[] grad = new double[gradOut.length / count];
+		for (int p = 0; p < count; p++) {
+			for (int i = 0; i < x.length; i++) x[i] = points[i*count + p];
+			values[p] = valueAndGradient(x, grad);
+			for (int i = 0; i < grad.length; i++) gradOut[i*count + p] = grad[i];
+		}
+	}
+
 }
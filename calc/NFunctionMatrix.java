@@ -1,5 +1,6 @@
 package calc;
 
+import generic.DenseMatrix;
 import generic.Matrix;
 import generic.Scalar;
 import generic.Vector;
@@ -20,4 +21,16 @@ public class NFunctionMatrix extends Matrix<NFunction> {
 		return apply(Scalar.class, (nfunc) -> nfunc.value(x));
 	}
 
+	/**
+	 * Primitive evaluation into a caller supplied matrix, x[i] holds variable i+1
+	 */
+	public void value(double[] x, DenseMatrix out) {
+		if (out.getRows() != getRows() || out.getCols() != getCols()) throw new RuntimeException("Function matrix bad dimensions");
+		for (int r = 0; r < getRows(); r++) {
+			for (int c = 0; c < getCols(); c++) {
+				out.set(r, c, get(r, c).value(x));
+			}
+		}
+	}
+
 }
@@ -17,4 +17,12 @@ public class NFunctionVector extends Vector<NFunction> {
         return apply(Scalar.class, (nfunc) -> nfunc.value(x));
     }
 
+    /**
+     * Primitive evaluation into a caller supplied buffer, x[i] holds variable i+1
+     */
+    public void value(double[] x, double[] out) {
+        if (out.length != getSize()) throw new RuntimeException("Function vector bad dimensions");
+        for (int i = 0; i < out.length; i++) out[i] = get(i).value(x);
+    }
+
 }
@@ -5,135 +5,120 @@ import generic.Scalar;
 import generic.Vector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * coefficient * x[vars[0]]^p0 * x[vars[1]]^p1 * ..., stored sparsely: only the variables present,
+ * in increasing order, each with a non-zero power. Powers that are all small integers take a byte each.
+ */
 public class NPolyTerm implements NFunction {
 
+	private static final int[] NO_VARS = new int[0];
+	private static final byte[] NO_POWERS = new byte[0];
+
 	public static final NPolyTerm ZERO = new NPolyTerm(0);
-	
-	int powersBeginIndex;
+
 	final double coefficient;
-	final double[] powers;
+	final int[] vars;
+	final byte[] smallPowers;	// Powers when all are integers in [-127, 127], otherwise null
+	final double[] powers;		// Powers when they do not fit smallPowers, otherwise null
 	
+	/**
+	 * Total order on the monomials, ignoring coefficients: exponent vectors compared lexicographically
+	 * in increasing variable index, the larger exponent first. Constants sort last, and this is
+	 * the order NPolynomial prints its terms in.
+	 */
 	public static final Comparator<NPolyTerm> SORT_ORDER = (o1, o2) -> {
-        if (o1.powersBeginIndex < o2.powersBeginIndex) return -1;
-        if (o1.powersBeginIndex > o2.powersBeginIndex) return 1;
-
-        for (int i = 0; i < o1.powers.length; i++) {
-            if (i >= o2.powers.length) return 1;
-            if (o1.powers[i] > o2.powers[i]) return 1;
-        }
-
-        return 0;
-    };
+		int n = Math.min(o1.vars.length, o2.vars.length);
+		for (int i = 0; i < n; i++) {
+			// A variable missing from the other term counts as exponent 0 there
+			if (o1.vars[i] < o2.vars[i]) return (o1.power(i) > 0) ? -1 : 1;
+			if (o1.vars[i] > o2.vars[i]) return (o2.power(i) > 0) ? 1 : -1;
+			int order = Double.compare(o2.power(i), o1.power(i));
+			if (order != 0) return order;
+		}
+		if (o1.vars.length > n) return (o1.power(n) > 0) ? -1 : 1;
+		if (o2.vars.length > n) return (o2.power(n) > 0) ? 1 : -1;
+		return 0;
+	};
 
 	/**
-	 * Format is "coefficient * x1^p1 * x2^p2 * x3^p3 + ..."
-	 * only valid variables are x1, x2, ..., x34, x35, ..., x[num]
+	 * Format is "coefficient * x[1]^p1 / x[2]^p2 * ...", see PolynomialParser
+	 * only valid variables are x[1], x[2], ..., x[num]
 	 * @param form
 	 * @return 
 	 */
 	public static NPolyTerm fromString(String form) throws RuntimeException {
-		double coefficient = 1;
-		Map<Integer, Double> exponents = new HashMap<>();
-		int largestSeenIndex = -1;
-		int smallestSeenIndex = Integer.MAX_VALUE;
-		
-		// Remove all whitespace
-		form = form.replaceAll("\\s", "");
-		
-		// Divide the string just in front of each * or / using Regex look-ahead
-		String[] split = form.split("(?=[*\\/])");
-		
-		for (int i = 0; i < split.length; i++) {
-			
-			// Check operator, all parts after the first must have a * or /
-			boolean negativeExponent = false;
-			if (i == 0) {
-				if (split[i].startsWith("[*\\/]")) {
-					throw new RuntimeException("Bad form, first element has operator '"+split[i].charAt(0)+"'");
-				}
-			} else {
-				if (split[i].startsWith("/")) negativeExponent = true;
-				split[i] = split[i].substring(1);
-			}
-				
-			
-			// Get parts before and after ^
-			String[] parts = split[i].split("\\^");
-			if (parts.length > 2) { 
-				throw new RuntimeException("Bad form, multiple '^' between * or /");
-			}
-						
-			// Check for straight coefficients
-			if (!parts[0].startsWith("x")) {
-				try {
-					double coeff = Double.parseDouble(parts[0]);
-					coefficient *= coeff;
-					continue;
-				} catch(Exception e) {
-					throw new RuntimeException("Bad form, variable or coefficient expected, got '"+parts[0]+"'");
-				}
-			}
-						
-			// Get variable index: 'x[this number]'
-			if (!parts[0].startsWith("x[") || !parts[0].endsWith("]")) {
-				throw new RuntimeException("Bad form, variable name must start with 'x[' and end with ']', got '"+parts[0]+"'");
-			}
-			parts[0] = parts[0].substring(2, parts[0].length()-1);
-			int varIndex = 0;
-			try {
-				varIndex = Integer.parseInt(parts[0]);
-			} catch(Exception e) {
-				throw new RuntimeException("Bad form, variable expected integer value, received '"+parts[0]+"'");
-			}
-			if (varIndex < 1) {
-				throw new RuntimeException("Bad form, negative or zero variable index");
-			}
-			if (varIndex > largestSeenIndex) largestSeenIndex = varIndex;
-			if (varIndex < smallestSeenIndex) smallestSeenIndex = varIndex;
-			
-			// Get exponent value '^ [this number]'
-			double exponent = 1;
-			if (parts.length == 2) {
-				try {
-					exponent = Double.parseDouble(parts[1]);
-				} catch(Exception e) {
-					throw new RuntimeException("Bad form, exponent expected floating point value, received '"+parts[1]+"'");
-				}
-			}
-			if (negativeExponent) exponent = -exponent;
-			
-			// Create an entry for the exponent of this variable index, later entries add together
-			double currentExp = exponents.getOrDefault(varIndex, 0.0);
-			exponents.put(varIndex, currentExp + exponent);
-		}
-		
-		if (largestSeenIndex-smallestSeenIndex < 0) {
-			return new NPolyTerm(coefficient);
-		}
-		
-		// Create actual powers array
-		double[] powers = new double[largestSeenIndex-smallestSeenIndex+1];
-		for (Integer index : exponents.keySet()) {
-			powers[index-smallestSeenIndex] = exponents.get(index);
+		return new PolynomialParser(form).parseTerm();
+	}
+
+	/**
+	 * Term from count variables in increasing order with their exponents, zero exponents are dropped
+	 */
+	static NPolyTerm of(double coefficient, int[] vars, double[] exps, int count) {
+		int kept = 0;
+		for (int i = 0; i < count; i++) if (exps[i] != 0) kept++;
+		int[] v = new int[kept];
+		double[] e = new double[kept];
+		for (int i = 0, k = 0; i < count; i++) {
+			if (exps[i] == 0) continue;
+			v[k] = vars[i];
+			e[k++] = exps[i];
 		}
-		
-		return new NPolyTerm(coefficient, smallestSeenIndex, powers);
+		return new NPolyTerm(coefficient, v, e);
 	}
 	
-	NPolyTerm(double coefficient, int beginIndex, double... powers) {
+	/**
+	 * Takes ownership of the arrays, vars increasing and every exponent non-zero
+	 */
+	NPolyTerm(double coefficient, int[] vars, double[] exps) {
 		this.coefficient = coefficient;
-		this.powers = new double[powers.length];
-		System.arraycopy(powers, 0, this.powers, 0, powers.length);
-		this.powersBeginIndex = beginIndex;
+		this.vars = (vars.length == 0) ? NO_VARS : vars;
+		byte[] small = (exps.length == 0) ? NO_POWERS : new byte[exps.length];
+		for (int i = 0; i < exps.length; i++) {
+			double e = exps[i];
+			if (e != (byte) e || e == Byte.MIN_VALUE) {
+				small = null;
+				break;
+			}
+			small[i] = (byte) e;
+		}
+		this.smallPowers = small;
+		this.powers = (small == null) ? exps : null;
+	}
+
+	// Same monomial with another coefficient, the arrays are shared
+	private NPolyTerm(double coefficient, NPolyTerm monomial) {
+		this.coefficient = coefficient;
+		this.vars = monomial.vars;
+		this.smallPowers = monomial.smallPowers;
+		this.powers = monomial.powers;
 	}
 	
+	/**
+	 * powers[i] is the power of x[i]
+	 */
 	public NPolyTerm(double coefficient, double... powers) {
-		this(coefficient, 0, powers);
+		this(coefficient, dense(powers));
+	}
+
+	private static NPolyTerm dense(double[] powers) {
+		int[] vars = new int[powers.length];
+		for (int i = 0; i < vars.length; i++) vars[i] = i;
+		return of(1, vars, powers, powers.length);
+	}
+
+	NPolyTerm withCoefficient(double coefficient) {
+		return new NPolyTerm(coefficient, this);
+	}
+
+	/**
+	 * Power of the i-th variable present, x[vars[i]]
+	 */
+	double power(int i) {
+		return (smallPowers != null) ? smallPowers[i] : powers[i];
 	}
 	
 	public boolean isZero() {
@@ -141,65 +126,55 @@ public class NPolyTerm implements NFunction {
 	}
 	
 	public double getPower(int varIndex) {
-		varIndex -= powersBeginIndex;
-		if (varIndex < 0) return 0;
-		if (varIndex >= powers.length) return 0;
-		return powers[varIndex];
+		int i = Arrays.binarySearch(vars, varIndex);
+		return (i < 0) ? 0 : power(i);
 	}
 	
+	/**
+	 * Whether the terms have the same variables with the same powers, i.e. differ only in coefficient
+	 */
 	public boolean canCombine(NPolyTerm other) {
-        if (this.powers.length == 0 && other.powers.length == 0) return true;
-		if (this.powersBeginIndex != other.powersBeginIndex) return false;
-		if (this.powers.length != other.powers.length) return false;
-		for (int i = 0; i < powers.length; i++) {
-			if (powers[i] != other.powers[i]) return false;
+		if (!Arrays.equals(vars, other.vars)) return false;
+		if (smallPowers != null && other.smallPowers != null) return Arrays.equals(smallPowers, other.smallPowers);
+		for (int i = 0; i < vars.length; i++) {
+			if (power(i) != other.power(i)) return false;
 		}
 		return true;
 	}
+
+	/**
+	 * Hash of the variables and powers, equal for terms that canCombine
+	 */
+	int monomialHash() {
+		int hash = 1;
+		for (int i = 0; i < vars.length; i++) {
+			hash = 31*(31*hash + vars[i]) + Double.hashCode(power(i));
+		}
+		return hash;
+	}
 	
 	public NPolyTerm derivative(int varIndex) {
-		double power = getPower(varIndex);
+		int index = Arrays.binarySearch(vars, varIndex);
+		if (index < 0) return ZERO;
+		double power = power(index);
 		double newCoef = coefficient*power;
 		if (newCoef == 0) return ZERO;
-		
-		int index = varIndex - powersBeginIndex;
-		double[] newPowers = new double[powers.length];
-		System.arraycopy(powers, 0, newPowers, 0, powers.length);
-		double newPower = (newPowers[index] -= 1);
 
-		if (newPower == 0) {
-			int minIndex = getMinIndex(newPowers);
-			int maxIndex = getMaxIndex(newPowers);
-			int len = maxIndex - minIndex + 1;
-			if (len < 0) len = 0;
-			double[] shrink = new double[len];
-			System.arraycopy(newPowers, minIndex, shrink, 0, len);
-			return new NPolyTerm(newCoef, powersBeginIndex+minIndex, shrink);
-		}
-
-		return new NPolyTerm(newCoef, powersBeginIndex, newPowers);
-	}
-	
-	private int getMinIndex(double[] arr) {
-		int min = arr.length;
-		for (int i = arr.length-1; i >= 0; i--) {
-			if (arr[i] != 0) {
-				min = i;
-				break;
+		if (power == 1) {
+			// The variable drops out
+			int[] newVars = new int[vars.length-1];
+			double[] newPowers = new double[vars.length-1];
+			for (int i = 0, k = 0; i < vars.length; i++) {
+				if (i == index) continue;
+				newVars[k] = vars[i];
+				newPowers[k++] = power(i);
 			}
+			return new NPolyTerm(newCoef, newVars, newPowers);
 		}
-		return min;
-	}
 
-	private int getMaxIndex(double[] arr) {
-		int max = -1;
-		for (int i = 0; i < arr.length; i++) {
-			if (arr[i] != 0) {
-				max = i;
-				break;
-			}
-		}
-		return max;
+		double[] newPowers = exponents();
+		newPowers[index] -= 1;
+		return new NPolyTerm(newCoef, vars, newPowers);
 	}
 
 	public String toString() {
@@ -215,20 +190,19 @@ public class NPolyTerm implements NFunction {
 			}
 		}
 		
-		for (int i = 0; i < powers.length; i++) {
-			if (powers[i] == 0) continue;
-			
+		for (int i = 0; i < vars.length; i++) {
 			if (appendTimes) sb.append('*');
 			appendTimes = true;
 			
-			sb.append("x[").append(i+powersBeginIndex).append(']');
-			if (powers[i] == 1) continue;
+			sb.append("x[").append(vars[i]).append(']');
+			double power = power(i);
+			if (power == 1) continue;
 			
 			sb.append('^');
-			if (powers[i] == Math.floor(powers[i])) {
-				sb.append((int) powers[i]);
+			if (power == Math.floor(power)) {
+				sb.append((int) power);
 			} else {
-				sb.append(powers[i]);
+				sb.append(power);
 			}
 		}
 		return sb.toString(); 
@@ -236,26 +210,61 @@ public class NPolyTerm implements NFunction {
 
 	public Scalar value(Vector<Scalar> x) {
 		double product = coefficient;
-		for (int i = 0; i < x.getSize(); i++) {
-			double value = x.get(i).value();
-			int ind = i+1-powersBeginIndex;
-			if (ind < 0 || ind >= powers.length) continue;
-			double power = powers[ind];
-			product *= Math.pow(value, power);
+		int size = x.getSize();
+		for (int i = 0; i < vars.length; i++) {
+			int var = vars[i];
+			if (var < 1) continue;
+			if (var > size) break;
+			product *= Math.pow(x.get(var-1).value(), power(i));
 		}
 		return new Scalar(product);
 	}
 
+	/**
+	 * Evaluates out.length points given as structure-of-arrays, see NFunction.evaluateBatch.
+	 * Each power is read once and applied across all points.
+	 */
+	public void evaluateBatch(double[] points, double[] out) {
+		int count = out.length;
+		Arrays.fill(out, coefficient);
+		for (int i = 0; i < vars.length; i++) {
+			if (vars[i] < 1) continue;
+			double power = power(i);
+			int offset = (vars[i]-1) * count;
+			if (offset + count > points.length) throw new RuntimeException("Batch is missing variable "+vars[i]);
+			for (int p = 0; p < count; p++) {
+				out[p] *= Math.pow(points[offset+p], power);
+			}
+		}
+	}
+
+	/**
+	 * Indices of the variables with a non-zero power, in increasing order. Shared, do not modify
+	 */
+	int[] variables() {
+		return vars;
+	}
+
+	/**
+	 * Non-zero powers, matching variables(), as a new array
+	 */
+	double[] exponents() {
+		if (powers != null) return powers.clone();
+		double[] exps = new double[vars.length];
+		for (int i = 0; i < exps.length; i++) exps[i] = smallPowers[i];
+		return exps;
+	}
+
 	public NPolyTerm negate() {
-        return new NPolyTerm(-coefficient, powersBeginIndex, powers);
+        return new NPolyTerm(-coefficient, this);
     }
 
     public NPolyTerm reciprocal() {
-        double[] recip = new double[powers.length];
-        for (int i = 0; i < powers.length; i++) {
-            recip[i] = -powers[i];
+        double[] recip = exponents();
+        for (int i = 0; i < recip.length; i++) {
+            recip[i] = -recip[i];
         }
-        return new NPolyTerm(1.0/coefficient, powersBeginIndex, powers);
+        return new NPolyTerm(1.0/coefficient, vars, recip);
     }
 
 	public Value add(Value other) {
@@ -271,7 +280,7 @@ public class NPolyTerm implements NFunction {
 	
 	public NFunction add(NPolyTerm other) {
 		if (this.canCombine(other)) {
-			return new NPolyTerm(this.coefficient + other.coefficient, this.powersBeginIndex, this.powers);
+			return new NPolyTerm(this.coefficient + other.coefficient, this);
 		}
 		
 		List<NPolyTerm> parts = new ArrayList<>();
@@ -295,41 +304,45 @@ public class NPolyTerm implements NFunction {
         }
 	}
 	
+	/**
+	 * Merges the two sorted variable lists, adding the powers of shared variables
+	 */
 	public NPolyTerm multiply(NPolyTerm other) {
-		int minA = this.powersBeginIndex;
-		int minB = other.powersBeginIndex;
-		int maxA = this.powersBeginIndex+this.powers.length;
-		int maxB = other.powersBeginIndex+other.powers.length;
-		int min = Math.min(minA, minB);
-		int max = Math.max(maxA, maxB);
-		
-		double[] output = new double[max-min+1];
-		int newMin = Integer.MAX_VALUE, newMax = -1;
-
 		double coef = this.coefficient * other.coefficient;
 		if (coef == 0) return ZERO;
-		
-		for (int i = min; i < max; i++) {
-			int indexA = i-this.powersBeginIndex;
-			int indexB = i-other.powersBeginIndex;
-			output[i-min] = 0;
-			if (indexA >= 0 && indexA < this.powers.length)  output[i-min] += this.powers[indexA];
-			if (indexB >= 0 && indexB < other.powers.length) output[i-min] += other.powers[indexB];
-			if (output[i-min] != 0) {
-				if (i < newMin) newMin = i;
-				if (i > newMax) newMax = i;
+		if (other.vars.length == 0) return new NPolyTerm(coef, this);
+		if (this.vars.length == 0) return new NPolyTerm(coef, other);
+
+		int[] a = this.vars, b = other.vars;
+		int[] newVars = new int[a.length + b.length];
+		double[] newPowers = new double[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length || j < b.length) {
+			int var;
+			double power;
+			if (j == b.length || (i < a.length && a[i] < b[j])) {
+				var = a[i];
+				power = this.power(i++);
+			} else if (i == a.length || b[j] < a[i]) {
+				var = b[j];
+				power = other.power(j++);
+			} else {
+				var = a[i];
+				power = this.power(i++) + other.power(j++);
+				if (power == 0) continue;
 			}
+			newVars[k] = var;
+			newPowers[k++] = power;
 		}
-
-		if (newMax-newMin < 0) return new NPolyTerm(coef);
-		double[] trunc = new double[newMax-newMin+1];
-		System.arraycopy(output, newMin-min, trunc, 0, newMax-newMin+1);
-		
-		return new NPolyTerm(coef, newMin, trunc);
+		if (k < newVars.length) {
+			newVars = Arrays.copyOf(newVars, k);
+			newPowers = Arrays.copyOf(newPowers, k);
+		}
+		return new NPolyTerm(coef, newVars, newPowers);
 	}
 
     public NPolyTerm multiply(Scalar other) {
-        return new NPolyTerm(coefficient*other.value(), powersBeginIndex, powers);
+        return new NPolyTerm(coefficient*other.value(), this);
     }
 
 	public NFunctionVector gradient(int maxIndex) {
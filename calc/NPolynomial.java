@@ -4,75 +4,168 @@ import generic.Scalar;
 import generic.Value;
 import generic.Vector;
 
+import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NPolynomial implements NFunction {
 
+	static final NPolynomial ZERO = new NPolynomial(Collections.singletonList(NPolyTerm.ZERO));
+
 	final List<NPolyTerm> parts;
+	private volatile CompiledPolynomial compiled;
+	private volatile PolynomialEvaluator evaluator;
+
+	// Derived on first use and shared, the polynomials and their symbolic forms are immutable
+	private volatile int[] variables;
+	private volatile ConcurrentHashMap<Integer, NPolynomial> derivatives;
+	private volatile NFunctionVector gradient;
+	private volatile SparseHessian sparseHessian;
+	private volatile NFunctionMatrix hessian;
 	
 	/**
-	 * Format is "coefficient * x[0]^p1 * x[2]^p2 * x[3]^p3 + ..."
-	 * only valid variables are x[0], ..., x[n]; n is an integer
+	 * Format is "coefficient * x[1]^p1 * x[2]^p2 / x[3]^p3 + ..."
+	 * only valid variables are x[1], ..., x[n]; n is an integer
 	 * @param form
 	 * @return 
 	 */
 	public static NPolynomial fromString(String form) throws RuntimeException {
-		List<NPolyTerm> build = new ArrayList<NPolyTerm>();
-		
-		// Remove all whitespace
-		form = form.replaceAll("\\s", "");
-		
-		// Divide the string just in front of each + or - using Regex look-ahead
-		String[] split = form.split("(?=[+-])");
-		
-		for (int i = 0; i < split.length; i++) {
-			if (split[i].startsWith("+")) {
-				if (i == 0) {
-					throw new RuntimeException("Bad form, first element has '+'");
-				} else {
-					split[i] = split[i].substring(1);
-				}
-			}
-			NPolyTerm prod = NPolyTerm.fromString(split[i]);
-			if (!prod.isZero()) build.add(prod);
+		return new PolynomialParser(form).parsePolynomial();
+	}
+
+	/**
+	 * Reads a polynomial in the fromString format, term by term without holding the text
+	 */
+	public static NPolynomial read(Reader reader) {
+		return new PolynomialParser(reader).parsePolynomial();
+	}
+
+	/**
+	 * Reads a polynomial in the fromString format from an ASCII file, through a memory mapping
+	 */
+	public static NPolynomial read(Path file) {
+		try (PolynomialParser parser = PolynomialParser.open(file)) {
+			return parser.parsePolynomial();
 		}
-		
-		return new NPolynomial(build);
 	}
 	
-	private static List<NPolyTerm> combineTerms(List<NPolyTerm> parts) {
-		List<NPolyTerm> combined = new ArrayList<NPolyTerm>();
-		List<Integer> skipIndex = new ArrayList<Integer>();
-		
-		for (int i = 0; i < parts.size(); i++) {
-			if (skipIndex.contains(i)) continue;
-			NPolyTerm term = parts.get(i);
-			double coef = term.coefficient;
-			for (int j = i+1; j < parts.size(); j++) {
-				NPolyTerm other = parts.get(j);
-				if (term.canCombine(other)) {
-					skipIndex.add(j);
-					coef += other.coefficient;
-				}
+	/**
+	 * Hash key of a term's monomial, also accumulating the coefficients of the terms that share it
+	 */
+	private static final class Monomial {
+
+		final NPolyTerm term;
+		final int hash;
+		double coefficient;
+
+		Monomial(NPolyTerm term) {
+			this.term = term;
+			this.hash = term.monomialHash();
+			this.coefficient = term.coefficient;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof Monomial && term.canCombine(((Monomial) other).term);
+		}
+
+	}
+
+	/**
+	 * Running sum of terms, adding up the coefficients of terms with the same monomial and keeping
+	 * the first occurrence of each. Expected O(1) per term.
+	 */
+	private static final class TermSum {
+
+		final Map<Monomial, Monomial> seen;
+		final List<Monomial> order;
+
+		TermSum(int expected) {
+			seen = new HashMap<>(Math.max(16, 2*expected));
+			order = new ArrayList<>(expected);
+		}
+
+		void add(NPolyTerm term) {
+			Monomial key = new Monomial(term);
+			Monomial existing = seen.putIfAbsent(key, key);
+			if (existing == null) order.add(key);
+			else existing.coefficient += term.coefficient;
+		}
+
+		List<NPolyTerm> terms() {
+			// Terms are immutable, an uncombined one can be shared
+			List<NPolyTerm> combined = new ArrayList<>(order.size());
+			for (Monomial monomial : order) {
+				NPolyTerm term = monomial.term;
+				if (monomial.coefficient == term.coefficient) combined.add(term);
+				else combined.add(term.withCoefficient(monomial.coefficient));
 			}
-			combined.add(new NPolyTerm(coef, term.powersBeginIndex, term.powers));
+			return combined;
 		}
-		
-		return combined;
+
+	}
+
+	private static TermSum combineTerms(List<NPolyTerm> parts) {
+		TermSum sum = new TermSum(parts.size());
+		for (NPolyTerm term : parts) sum.add(term);
+		return sum;
 	}
 	
 	public NPolynomial(List<NPolyTerm> parts) {
+		this(combineTerms(parts));
+	}
+
+	private NPolynomial(TermSum sum) {
 		// add parts to a private list
-		List<NPolyTerm> build = combineTerms(parts);
+		List<NPolyTerm> build = sum.terms();
 		build.sort(NPolyTerm.SORT_ORDER);
 		
 		// only remaining reference to the private list is unmodifiable
 		this.parts = Collections.unmodifiableList(build);
 	}
 	
+	/**
+	 * Derived once per variable and remembered, ZERO for a variable that does not appear
+	 */
 	public NPolynomial derivative(int varIndex) {
+		ConcurrentHashMap<Integer, NPolynomial> map = derivatives;
+		if (map != null) {
+			NPolynomial result = map.get(varIndex);
+			if (result != null) return result;
+		}
+		if (Arrays.binarySearch(variables(), varIndex) < 0) return ZERO;
+
+		// Derived outside the map's locks, a thread losing the race adopts the stored result
+		NPolynomial result = derive(varIndex);
+		NPolynomial stored = derivativeMap().putIfAbsent(varIndex, result);
+		return (stored != null) ? stored : result;
+	}
+
+	/**
+	 * Created on the first derivative so temporaries from add and multiply do not carry one
+	 */
+	private ConcurrentHashMap<Integer, NPolynomial> derivativeMap() {
+		ConcurrentHashMap<Integer, NPolynomial> map = derivatives;
+		if (map == null) {
+			synchronized (this) {
+				map = derivatives;
+				if (map == null) derivatives = map = new ConcurrentHashMap<>();
+			}
+		}
+		return map;
+	}
+
+	private NPolynomial derive(int varIndex) {
 		List<NPolyTerm> build = new ArrayList<>();
 		for (NPolyTerm prod : parts) {
 			NPolyTerm deriv = prod.derivative(varIndex);
@@ -90,6 +183,45 @@ public class NPolynomial implements NFunction {
 		return new Scalar(sum);
 	}
 	
+	/**
+	 * Flattens this polynomial into packed primitive arrays for allocation-free evaluation
+	 */
+	public CompiledPolynomial compile() {
+		// Racy but safe, CompiledPolynomial is immutable with final fields
+		CompiledPolynomial result = compiled;
+		if (result == null) compiled = result = new CompiledPolynomial(parts);
+		return result;
+	}
+
+	/**
+	 * Evaluator behind value(double[]) and valueAndGradient, generated bytecode when
+	 * PolynomialCodegen is enabled at first use and the polynomial fits, otherwise compile()
+	 */
+	public PolynomialEvaluator evaluator() {
+		PolynomialEvaluator result = evaluator;
+		if (result == null) {
+			result = PolynomialCodegen.isEnabled() ? PolynomialCodegen.generate(this) : compile();
+			evaluator = result;
+		}
+		return result;
+	}
+
+	public double value(double[] x) {
+		return evaluator().eval(x);
+	}
+
+	public double valueAndGradient(double[] x, double[] gradOut) {
+		return evaluator().valueAndGradient(x, gradOut);
+	}
+
+	public void evaluateBatch(double[] points, double[] out) {
+		compile().evaluateBatch(points, out);
+	}
+
+	public void gradientBatch(double[] points, double[] values, double[] gradOut) {
+		compile().gradientBatch(points, values, gradOut);
+	}
+
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		int num = 0;
@@ -161,17 +293,38 @@ public class NPolynomial implements NFunction {
         }
 	}
 
+	/**
+	 * Every pair of terms is multiplied once and summed straight into one table of monomials,
+	 * O(t1*t2) expected with memory for the distinct products only
+	 */
 	public NPolynomial multiply(NPolynomial other) {
-		NPolynomial sumPoly = null;
-		for (NPolyTerm term : other.parts) {
-			NPolynomial newPoly = new NPolynomial(this.parts);
-			newPoly = newPoly.multiply(term);
-			
-			if (sumPoly == null) sumPoly = newPoly;
-			else sumPoly = sumPoly.add(newPoly);
+		TermSum sum = new TermSum(Math.max(parts.size(), other.parts.size()));
+		for (NPolyTerm term : parts) {
+			if (term.isZero()) continue;
+			for (NPolyTerm factor : other.parts) {
+				if (factor.isZero()) continue;
+				NPolyTerm product = term.multiply(factor);
+				if (!product.isZero()) sum.add(product);
+			}
 		}
-		
-		return sumPoly;
+		if (sum.order.isEmpty()) sum.add(NPolyTerm.ZERO);
+		return new NPolynomial(sum);
+	}
+
+	/**
+	 * this^power, power 0 gives the constant 1. Multiplies by this power-1 times rather than squaring:
+	 * each product then costs (terms so far)*(terms of this), which for sparse polynomials is far
+	 * below squaring the large intermediate results.
+	 */
+	public NPolynomial pow(int power) {
+		if (power < 0) {
+			if (parts.size() == 1) return new NPolynomial(Collections.singletonList(parts.get(0).reciprocal())).pow(-power);
+			throw new RuntimeException("Negative power of a polynomial with several terms is not a polynomial");
+		}
+		if (power == 0) return new NPolynomial(Collections.singletonList(new NPolyTerm(1)));
+		NPolynomial result = this;
+		for (int i = 1; i < power; i++) result = result.multiply(this);
+		return result;
 	}
 	
 	public NPolynomial multiply(NPolyTerm other) {
@@ -192,22 +345,94 @@ public class NPolynomial implements NFunction {
         return this.multiply(new NPolyTerm(other.value()));
     }
 
+	/**
+	 * Remembered for the last maxIndex asked for, so solvers built on the same polynomial share one gradient
+	 */
 	public NFunctionVector gradient(int maxIndex) {
+		// Racy but safe like compile(), NFunctionVector is immutable
+		NFunctionVector result = gradient;
+		if (result != null && result.getSize() == maxIndex) return result;
 		NPolynomial[] values = new NPolynomial[maxIndex];
 		for (int i = 1; i <= maxIndex; i++) {
 			values[i-1] = this.derivative(i);
 		}
-		return new NFunctionVector(values);
+		gradient = result = new NFunctionVector(values);
+		return result;
 	}
 
+	/**
+	 * Remembered for the last maxIndex asked for, like gradient
+	 */
 	public NFunctionMatrix hessian(int maxIndex) {
-		NFunction[][] hessian = new NFunction[maxIndex][maxIndex];
-		for (int r = 0; r < maxIndex; r++) {
-			for (int c = 0; c < maxIndex; c++) {
-				hessian[r][c] = this.derivative(r+1).derivative(c+1);
+		NFunctionMatrix result = hessian;
+		if (result != null && result.getRows() == maxIndex) return result;
+		hessian = result = sparseHessian(maxIndex).toMatrix();
+		return result;
+	}
+
+	/**
+	 * Derives each first derivative once and then only the second derivatives that can be non-zero:
+	 * entry (r, c) is built only when x[c] still appears in df/dx[r], and only for c >= r.
+	 * Cost and storage follow the number of structurally non-zero entries instead of maxIndex^2.
+	 * Remembered for the last maxIndex asked for.
+	 */
+	public SparseHessian sparseHessian(int maxIndex) {
+		SparseHessian result = sparseHessian;
+		if (result != null && result.getSize() == maxIndex) return result;
+
+		int[] rowStart = new int[maxIndex+1];
+		List<Integer> cols = new ArrayList<>();
+		List<NFunction> entries = new ArrayList<>();
+
+		int[] present = variables();
+		int next = 0;
+		for (int r = 1; r <= maxIndex; r++) {
+			rowStart[r-1] = entries.size();
+			while (next < present.length && present[next] < r) next++;
+			if (next == present.length || present[next] != r) continue;
+
+			NPolynomial first = this.derivative(r);
+			for (int c : first.variables()) {
+				if (c < r || c > maxIndex) continue;
+				NPolynomial second = first.derivative(c);
+				if (second.isZero()) continue;
+				cols.add(c-1);
+				entries.add(second);
 			}
 		}
-		return new NFunctionMatrix(hessian);
+		rowStart[maxIndex] = entries.size();
+
+		int[] colArray = new int[cols.size()];
+		for (int i = 0; i < colArray.length; i++) colArray[i] = cols.get(i);
+		sparseHessian = result = new SparseHessian(maxIndex, rowStart, colArray, entries.toArray(new NFunction[0]), ZERO);
+		return result;
+	}
+
+	/**
+	 * Indices of every variable that appears with a non-zero power, in increasing order. Shared, do not modify
+	 */
+	int[] variables() {
+		int[] result = variables;
+		if (result == null) variables = result = collectVariables();
+		return result;
+	}
+
+	private int[] collectVariables() {
+		TreeSet<Integer> vars = new TreeSet<>();
+		for (NPolyTerm term : parts) {
+			for (int v : term.variables()) vars.add(v);
+		}
+		int[] out = new int[vars.size()];
+		int i = 0;
+		for (int v : vars) out[i++] = v;
+		return out;
+	}
+
+	public boolean isZero() {
+		for (NPolyTerm term : parts) {
+			if (!term.isZero()) return false;
+		}
+		return true;
 	}
 
 	
@@ -0,0 +1,401 @@
+package calc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns a polynomial into a hidden class whose eval and valueAndGradient are straight-line
+ * arithmetic, with every variable loaded once into a local and every coefficient a constant.
+ * The JIT then sees no loops or index arrays at all.
+ *
+ * HotSpot does not JIT-compile methods over 8000 bytes of bytecode (-XX:-DontCompileHugeMethods
+ * lifts that), and such a method interpreted is slower than CompiledPolynomial. Polynomials whose
+ * generated code would reach that size fall back to the interpreted CompiledPolynomial, as do
+ * classes the JVM fails to define.
+ */
+public final class PolynomialCodegen {
+
+	private static volatile boolean enabled = Boolean.getBoolean("calc.codegen");
+
+	static final int MAX_CODE_SIZE = 7900;	// Bytes of bytecode per method, below HotSpot's HugeMethodLimit of 8000
+	static final int MAX_VARIABLES = 16000;	// Two double locals per variable must fit in 65535 slots
+
+	private PolynomialCodegen() {
+	}
+
+	/**
+	 * Whether NPolynomial.evaluator() generates code, off unless -Dcalc.codegen=true
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		PolynomialCodegen.enabled = enabled;
+	}
+
+	/**
+	 * Generated evaluator for poly, or its interpreted CompiledPolynomial if it is too large
+	 */
+	public static PolynomialEvaluator generate(NPolynomial poly) {
+		CompiledPolynomial compiled = poly.compile();
+		if (!fits(compiled)) return compiled;
+		try {
+			byte[] bytes = new ClassEmitter(compiled).emit();
+			if (bytes == null) return compiled;
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			GeneratedPolynomial generated = (GeneratedPolynomial) lookup.lookupClass().getDeclaredConstructor().newInstance();
+			generated.maxIndex = compiled.maxIndex;
+			return generated;
+		} catch (IOException | LinkageError | ReflectiveOperationException e) {
+			// Rejected or unloadable class, e.g. a verify error, the interpreted form still works
+			return compiled;
+		}
+	}
+
+	/**
+	 * Cheap size estimate so huge polynomials are rejected before emitting anything.
+	 * Gradient code repeats a term's other factors for each of its variables.
+	 */
+	static boolean fits(CompiledPolynomial compiled) {
+		if (compiled.maxIndex > MAX_VARIABLES) return false;
+		// Loading the variables and storing the gradient take about 6 bytes each per variable
+		long size = 12L*compiled.maxIndex;
+		for (int t = 0; t < compiled.coefficients.length; t++) {
+			long factors = compiled.termStart[t+1] - compiled.termStart[t];
+			size += 8 + 6*factors + factors*(12 + 6*factors);
+			if (size > MAX_CODE_SIZE) return false;
+		}
+		return true;
+	}
+
+	private static final int ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+	// Opcodes
+	private static final int ICONST_0 = 0x03, DCONST_0 = 0x0e, DCONST_1 = 0x0f, BIPUSH = 0x10, SIPUSH = 0x11;
+	private static final int LDC_W = 0x13, LDC2_W = 0x14, DLOAD = 0x18, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b;
+	private static final int ALOAD_2 = 0x2c, DALOAD = 0x31, DSTORE = 0x39, DASTORE = 0x52, DADD = 0x63;
+	private static final int DMUL = 0x6b, DRETURN = 0xaf, RETURN = 0xb1, INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8, WIDE = 0xc4;
+
+	/**
+	 * Writes a class extending GeneratedPolynomial with value0 and gradient0 implemented
+	 */
+	private static class ClassEmitter {
+
+		final CompiledPolynomial poly;
+		final ConstantPool pool = new ConstantPool();
+
+		// Locals: 0 this, 1 x, 2 grad, then one double per used variable, one per gradient accumulator, the sum
+		final int[] varSlot;
+		final int[] gradSlot;
+		int maxLocals;
+
+		ClassEmitter(CompiledPolynomial poly) {
+			this.poly = poly;
+			this.varSlot = new int[poly.maxIndex];
+			this.gradSlot = new int[poly.maxIndex];
+			int slot = 3;
+			for (int v : poly.variables) {
+				if (varSlot[v] != 0) continue;
+				varSlot[v] = slot;
+				gradSlot[v] = slot+2;
+				slot += 4;
+			}
+			this.maxLocals = slot+2;
+		}
+
+		byte[] emit() throws IOException {
+			String self = "calc/GeneratedPolynomial$Impl";
+			String base = "calc/GeneratedPolynomial";
+			int thisClass = pool.classRef(self);
+			int superClass = pool.classRef(base);
+			int superInit = pool.methodRef(base, "<init>", "()V");
+			int code = pool.utf8("Code");
+
+			int[] names = { pool.utf8("<init>"), pool.utf8("value0"), pool.utf8("gradient0") };
+			int[] types = { pool.utf8("()V"), pool.utf8("([D)D"), pool.utf8("([D[D)D") };
+
+			byte[] init = new byte[] { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit, (byte) RETURN };
+			byte[] value = valueCode();
+			byte[] gradient = gradientCode();
+			// The estimate in fits() is rough, the emitted code decides
+			if (value.length > MAX_CODE_SIZE || gradient.length > MAX_CODE_SIZE || pool.size() > 65535) return null;
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(61);	// Java 17, no branches so no StackMapTable is needed
+			pool.write(out);
+			out.writeShort(ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0);	// interfaces
+			out.writeShort(0);	// fields
+			out.writeShort(3);	// methods
+			writeMethod(out, names[0], types[0], code, 1, 1, init);
+			writeMethod(out, names[1], types[1], code, 8, maxLocals, value);
+			writeMethod(out, names[2], types[2], code, 8, maxLocals, gradient);
+			out.writeShort(0);	// attributes
+			return bytes.toByteArray();
+		}
+
+		private void writeMethod(DataOutputStream out, int name, int type, int codeAttr, int maxStack, int maxLocals, byte[] code) throws IOException {
+			out.writeShort(0);
+			out.writeShort(name);
+			out.writeShort(type);
+			out.writeShort(1);
+			out.writeShort(codeAttr);
+			out.writeInt(12 + code.length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0);	// exception table
+			out.writeShort(0);	// attributes
+		}
+
+		private byte[] valueCode() {
+			Code code = new Code();
+			loadVariables(code);
+			code.op(DCONST_0);
+			for (int t = 0; t < poly.coefficients.length; t++) {
+				code.constant(poly.coefficients[t]);
+				for (int k = poly.termStart[t]; k < poly.termStart[t+1]; k++) {
+					factor(code, k, 0);
+					code.op(DMUL);
+				}
+				code.op(DADD);
+			}
+			code.op(DRETURN);
+			return code.toByteArray();
+		}
+
+		private byte[] gradientCode() {
+			Code code = new Code();
+			loadVariables(code);
+			int sumSlot = maxLocals-2;
+			code.op(DCONST_0);
+			for (int v = 0; v < varSlot.length; v++) {
+				if (varSlot[v] == 0) continue;
+				code.op(DCONST_0);
+				code.local(DSTORE, gradSlot[v]);
+			}
+
+			for (int t = 0; t < poly.coefficients.length; t++) {
+				int start = poly.termStart[t], end = poly.termStart[t+1];
+				code.constant(poly.coefficients[t]);
+				for (int k = start; k < end; k++) {
+					factor(code, k, 0);
+					code.op(DMUL);
+				}
+				code.op(DADD);
+
+				// d/dx_k of c*prod(x_j^p_j) = c*p_k*x_k^(p_k-1)*prod(j != k, x_j^p_j)
+				for (int k = start; k < end; k++) {
+					code.constant(poly.coefficients[t] * poly.exponents[k]);
+					for (int j = start; j < end; j++) {
+						if (factor(code, j, j == k ? 1 : 0)) code.op(DMUL);
+					}
+					int slot = gradSlot[poly.variables[k]];
+					code.local(DLOAD, slot);
+					code.op(DADD);
+					code.local(DSTORE, slot);
+				}
+			}
+			code.local(DSTORE, sumSlot);
+
+			for (int v = 0; v < varSlot.length; v++) {
+				code.op(ALOAD_2);
+				code.integer(v);
+				if (varSlot[v] == 0) code.op(DCONST_0);
+				else code.local(DLOAD, gradSlot[v]);
+				code.op(DASTORE);
+			}
+			code.local(DLOAD, sumSlot);
+			code.op(DRETURN);
+			return code.toByteArray();
+		}
+
+		private void loadVariables(Code code) {
+			for (int v = 0; v < varSlot.length; v++) {
+				if (varSlot[v] == 0) continue;
+				code.op(ALOAD_1);
+				code.integer(v);
+				code.op(DALOAD);
+				code.local(DSTORE, varSlot[v]);
+			}
+		}
+
+		/**
+		 * Pushes x_v^(p-lower) for factor k, returns false and pushes nothing when that power is 0
+		 */
+		private boolean factor(Code code, int k, int lower) {
+			int slot = varSlot[poly.variables[k]];
+			int power = poly.intExponents[k];
+			if (power == CompiledPolynomial.NON_INTEGER) {
+				code.local(DLOAD, slot);
+				code.constant(poly.exponents[k] - lower);
+				code.invokeStatic(pool.methodRef("java/lang/Math", "pow", "(DD)D"));
+				return true;
+			}
+			power -= lower;
+			switch (power) {
+				case 0:
+					return false;
+				case 1:
+					code.local(DLOAD, slot);
+					return true;
+				case 2:
+				case 3:
+					code.local(DLOAD, slot);
+					for (int i = 1; i < power; i++) {
+						code.local(DLOAD, slot);
+						code.op(DMUL);
+					}
+					return true;
+				default:
+					code.local(DLOAD, slot);
+					code.integer(power);
+					code.invokeStatic(pool.methodRef("calc/CompiledPolynomial", "pow", "(DI)D"));
+					return true;
+			}
+		}
+
+		private class Code {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+			void op(int opcode) {
+				bytes.write(opcode);
+			}
+
+			void u2(int value) {
+				bytes.write(value >> 8);
+				bytes.write(value);
+			}
+
+			void local(int opcode, int slot) {
+				if (slot < 256) {
+					op(opcode);
+					op(slot);
+				} else {
+					op(WIDE);
+					op(opcode);
+					u2(slot);
+				}
+			}
+
+			void integer(int value) {
+				if (value >= -1 && value <= 5) {
+					op(ICONST_0 + value);
+				} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+					op(BIPUSH);
+					op(value);
+				} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+					op(SIPUSH);
+					u2(value);
+				} else {
+					op(LDC_W);
+					u2(pool.integer(value));
+				}
+			}
+
+			void constant(double value) {
+				if (Double.doubleToRawLongBits(value) == 0L) {
+					op(DCONST_0);
+				} else if (value == 1.0) {
+					op(DCONST_1);
+				} else {
+					op(LDC2_W);
+					u2(pool.doubleConstant(value));
+				}
+			}
+
+			void invokeStatic(int methodRef) {
+				op(INVOKESTATIC);
+				u2(methodRef);
+			}
+
+			byte[] toByteArray() {
+				return bytes.toByteArray();
+			}
+		}
+
+	}
+
+	/**
+	 * Deduplicating class file constant pool
+	 */
+	private static class ConstantPool {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<Object, Integer> indices = new HashMap<>();
+		private int next = 1;
+
+		int size() {
+			return next;
+		}
+
+		void write(DataOutputStream dest) throws IOException {
+			dest.writeShort(next);
+			bytes.writeTo(dest);
+		}
+
+		int utf8(String value) {
+			return entry("U" + value, 1, () -> { out.writeByte(1); out.writeUTF(value); });
+		}
+
+		int integer(int value) {
+			return entry("I" + value, 1, () -> { out.writeByte(3); out.writeInt(value); });
+		}
+
+		int doubleConstant(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+			return entry("D" + bits, 2, () -> { out.writeByte(6); out.writeLong(bits); });
+		}
+
+		int classRef(String name) {
+			int nameIndex = utf8(name);
+			return entry("C" + name, 1, () -> { out.writeByte(7); out.writeShort(nameIndex); });
+		}
+
+		int methodRef(String owner, String name, String type) {
+			int ownerIndex = classRef(owner);
+			int nameIndex = utf8(name);
+			int typeIndex = utf8(type);
+			int nameAndType = entry("N" + name + " " + type, 1, () -> {
+				out.writeByte(12); out.writeShort(nameIndex); out.writeShort(typeIndex);
+			});
+			return entry("M" + owner + "." + name + type, 1, () -> {
+				out.writeByte(10); out.writeShort(ownerIndex); out.writeShort(nameAndType);
+			});
+		}
+
+		// Doubles take two slots of the pool
+		private int entry(Object key, int slots, Writer writer) {
+			Integer index = indices.get(key);
+			if (index != null) return index;
+			try {
+				writer.write();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			indices.put(key, next);
+			next += slots;
+			return next - slots;
+		}
+
+		private interface Writer {
+			void write() throws IOException;
+		}
+
+	}
+
+}
@@ -0,0 +1,20 @@
+package calc;
+
+/**
+ * Allocation-free numeric form of a polynomial. x[i] holds variable i+1.
+ */
+public interface PolynomialEvaluator {
+
+	/**
+	 * Highest variable index used, points passed in must have at least this many entries
+	 */
+	public int getMaxIndex();
+
+	public double eval(double[] x);
+
+	/**
+	 * Computes f(x) and writes df/dx[i+1] into gradOut[i] for i < gradOut.length
+	 */
+	public double valueAndGradient(double[] x, double[] gradOut);
+
+}
@@ -0,0 +1,349 @@
+package calc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single pass parser for the polynomial format "c * x[i]^p * x[j]^q / x[k] + ... - ...".
+ * Reads the input through a fixed size buffer and hands out one term at a time, so a model
+ * can be read from a Reader or a memory-mapped file without holding its text in memory.
+ * Whitespace may appear between any two tokens. Exponents and coefficients are decimal numbers,
+ * optionally signed after '^' and with an e/E exponent.
+ */
+public final class PolynomialParser implements Closeable {
+
+	private static final int BUFFER = 8192;
+	private static final long MAP_CHUNK = 1L << 28;		// Mapped window into files, 256 MB
+
+	// Exactly one of these is the source
+	private final CharSequence text;
+	private final Reader reader;
+	private final FileChannel channel;
+
+	private int textPos;
+	private long filePos, fileSize;
+	private MappedByteBuffer mapped;
+
+	private final char[] buf = new char[BUFFER];
+	private int pos, limit;
+	private long offset;			// Characters consumed before buf[0], for error positions
+	private boolean first = true;
+
+	// Factors of the term being read, merged per variable when the term is built
+	private int[] vars = new int[8];
+	private double[] exps = new double[8];
+	private final StringBuilder token = new StringBuilder();
+
+	public PolynomialParser(CharSequence text) {
+		this.text = text;
+		this.reader = null;
+		this.channel = null;
+	}
+
+	public PolynomialParser(Reader reader) {
+		this.text = null;
+		this.reader = reader;
+		this.channel = null;
+	}
+
+	private PolynomialParser(FileChannel channel) throws IOException {
+		this.text = null;
+		this.reader = null;
+		this.channel = channel;
+		this.fileSize = channel.size();
+	}
+
+	/**
+	 * Parses an ASCII file through a memory mapping, close the parser to release the file
+	 */
+	public static PolynomialParser open(Path file) {
+		try {
+			return new PolynomialParser(FileChannel.open(file, StandardOpenOption.READ));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void close() {
+		try {
+			if (reader != null) reader.close();
+			if (channel != null) channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Parses the rest of the input as one polynomial, dropping terms with a zero coefficient
+	 */
+	public NPolynomial parsePolynomial() {
+		List<NPolyTerm> terms = new ArrayList<>();
+		for (NPolyTerm term = nextTerm(); term != null; term = nextTerm()) {
+			if (!term.isZero()) terms.add(term);
+		}
+		return new NPolynomial(terms);
+	}
+
+	/**
+	 * Next term of the polynomial, null at the end of the input
+	 */
+	public NPolyTerm nextTerm() {
+		int c = skipSpace();
+		if (first) {
+			first = false;
+			if (c == '+') throw error("Bad form, first element has '+'");
+			return term(c == '-' ? consumeSign() : 1);
+		}
+		if (c < 0) return null;
+		if (c != '+' && c != '-') throw error("Bad form, expected '+' or '-' between terms, got '"+(char) c+"'");
+		double sign = consumeSign();
+		if (skipSpace() == '+' || peek() == '-') throw error("Bad form, two signs in a row");
+		return term(sign);
+	}
+
+	/**
+	 * Parses the whole input as a single term
+	 */
+	public NPolyTerm parseTerm() {
+		int c = skipSpace();
+		double sign = (c == '+' || c == '-') ? consumeSign() : 1;
+		NPolyTerm term = term(sign);
+		if (skipSpace() >= 0) throw error("Bad form, unexpected '"+(char) peek()+"' after term");
+		return term;
+	}
+
+	private double consumeSign() {
+		return (read() == '-') ? -1 : 1;
+	}
+
+	private NPolyTerm term(double coefficient) {
+		int count = 0;
+		boolean divide = false;
+		while (true) {
+			int c = skipSpace();
+			if (c == 'x') {
+				read();
+				expect('[');
+				int index = integer();
+				expect(']');
+				if (index < 1) throw error("Bad form, negative or zero variable index");
+				double exponent = exponent();
+				if (count == vars.length) {
+					vars = Arrays.copyOf(vars, 2*count);
+					exps = Arrays.copyOf(exps, 2*count);
+				}
+				vars[count] = index;
+				exps[count++] = divide ? -exponent : exponent;
+			} else if (isNumberStart(c)) {
+				double value = Math.pow(number(), exponent());
+				coefficient = divide ? coefficient / value : coefficient * value;
+			} else {
+				throw error("Bad form, variable or coefficient expected, got "+describe(c));
+			}
+
+			c = skipSpace();
+			if (c != '*' && c != '/') break;
+			divide = read() == '/';
+		}
+		return build(coefficient, count);
+	}
+
+	/**
+	 * Sorts the factors by variable and adds the exponents of repeated variables
+	 */
+	private NPolyTerm build(double coefficient, int count) {
+		// Insertion sort, terms have few factors
+		for (int i = 1; i < count; i++) {
+			int v = vars[i];
+			double e = exps[i];
+			int j = i-1;
+			for (; j >= 0 && vars[j] > v; j--) {
+				vars[j+1] = vars[j];
+				exps[j+1] = exps[j];
+			}
+			vars[j+1] = v;
+			exps[j+1] = e;
+		}
+		int merged = 0;
+		for (int i = 0; i < count; i++) {
+			if (merged > 0 && vars[merged-1] == vars[i]) {
+				exps[merged-1] += exps[i];
+			} else {
+				vars[merged] = vars[i];
+				exps[merged++] = exps[i];
+			}
+		}
+		return NPolyTerm.of(coefficient, vars, exps, merged);
+	}
+
+	private double exponent() {
+		if (skipSpace() != '^') return 1;
+		read();
+		int c = skipSpace();
+		double sign = 1;
+		if (c == '+' || c == '-') {
+			sign = consumeSign();
+			c = skipSpace();
+		}
+		if (!isNumberStart(c)) throw error("Bad form, exponent expected floating point value, got "+describe(c));
+		return sign * number();
+	}
+
+	private int integer() {
+		int c = skipSpace();
+		if (c < '0' || c > '9') throw error("Bad form, variable expected integer value, got "+describe(c));
+		long value = 0;
+		while (c >= '0' && c <= '9') {
+			value = 10*value + (c - '0');
+			if (value > Integer.MAX_VALUE) throw error("Bad form, variable index too large");
+			read();
+			c = peek();
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Unsigned decimal. Up to 18 significant digits without an exponent part are converted directly,
+	 * anything longer goes through Double.parseDouble.
+	 */
+	private double number() {
+		StringBuilder token = this.token;
+		token.setLength(0);
+		long mantissa = 0;
+		int figures = 0, scale = 0;
+		boolean point = false, any = false;
+		int c = peek();
+		while ((c >= '0' && c <= '9') || (c == '.' && !point)) {
+			if (c == '.') {
+				point = true;
+			} else {
+				any = true;
+				mantissa = 10*mantissa + (c - '0');
+				if (mantissa != 0) figures++;
+				if (point) scale++;
+			}
+			token.append((char) c);
+			read();
+			c = peek();
+		}
+		if (!any) throw error("Bad form, digits expected");
+
+		boolean slow = figures > 18;
+		if (c == 'e' || c == 'E') {
+			slow = true;
+			token.append((char) read());
+			c = peek();
+			if (c == '+' || c == '-') {
+				token.append((char) read());
+				c = peek();
+			}
+			if (c < '0' || c > '9') throw error("Bad form, digits expected in exponent");
+			while (c >= '0' && c <= '9') {
+				token.append((char) read());
+				c = peek();
+			}
+		}
+		if (slow) return Double.parseDouble(token.toString());
+
+		// Exact when both mantissa and 10^scale are exactly representable
+		if (scale == 0) return mantissa;
+		if (scale <= 22 && mantissa < (1L << 53)) return mantissa / POWERS_OF_TEN[scale];
+		return Double.parseDouble(token.toString());
+	}
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i-1];
+	}
+
+	private static boolean isNumberStart(int c) {
+		return (c >= '0' && c <= '9') || c == '.';
+	}
+
+	private void expect(char expected) {
+		int c = skipSpace();
+		if (c != expected) throw error("Bad form, expected '"+expected+"', got "+describe(c));
+		read();
+	}
+
+	private String describe(int c) {
+		return (c < 0) ? "end of input" : "'"+(char) c+"'";
+	}
+
+	private RuntimeException error(String message) {
+		return new RuntimeException(message+" at character "+(offset + pos));
+	}
+
+	// Character level
+
+	private int skipSpace() {
+		int c = peek();
+		while (c >= 0 && Character.isWhitespace(c)) {
+			read();
+			c = peek();
+		}
+		return c;
+	}
+
+	private int peek() {
+		if (pos == limit && !fill()) return -1;
+		return buf[pos];
+	}
+
+	private int read() {
+		if (pos == limit && !fill()) return -1;
+		return buf[pos++];
+	}
+
+	private boolean fill() {
+		offset += limit;
+		pos = limit = 0;
+		if (text != null) {
+			int n = Math.min(buf.length, text.length() - textPos);
+			if (text instanceof String) ((String) text).getChars(textPos, textPos + n, buf, 0);
+			else for (int i = 0; i < n; i++) buf[i] = text.charAt(textPos + i);
+			textPos += n;
+			limit = n;
+		} else if (reader != null) {
+			try {
+				int n = reader.read(buf, 0, buf.length);
+				limit = Math.max(n, 0);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			limit = fillFromFile();
+		}
+		return limit > 0;
+	}
+
+	/**
+	 * Copies the next bytes of the mapped window as ASCII characters, moving the window on when it runs out
+	 */
+	private int fillFromFile() {
+		try {
+			if (mapped == null || !mapped.hasRemaining()) {
+				if (filePos >= fileSize) return 0;
+				long size = Math.min(MAP_CHUNK, fileSize - filePos);
+				mapped = channel.map(FileChannel.MapMode.READ_ONLY, filePos, size);
+				filePos += size;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		int n = Math.min(buf.length, mapped.remaining());
+		for (int i = 0; i < n; i++) buf[i] = (char) (mapped.get() & 0xff);
+		return n;
+	}
+
+}
@@ -0,0 +1,116 @@
+package calc;
+
+import generic.DenseMatrix;
+import generic.Matrix;
+import generic.Scalar;
+import generic.Vector;
+
+import java.util.Arrays;
+
+/**
+ * Symbolic Hessian that stores only the structurally non-zero entries of its upper triangle,
+ * CSR-style: row r holds columns cols[rowStart[r]] to cols[rowStart[r+1]-1] in increasing order.
+ * Rows and columns are 0-based, entry (r, c) is d^2f / dx[r+1] dx[c+1].
+ */
+public class SparseHessian {
+
+	final int size;
+	final int[] rowStart;
+	final int[] cols;
+	final NFunction[] entries;
+	final NFunction zero;
+
+	SparseHessian(int size, int[] rowStart, int[] cols, NFunction[] entries, NFunction zero) {
+		this.size = size;
+		this.zero = zero;
+		this.rowStart = rowStart;
+		this.cols = cols;
+		this.entries = entries;
+	}
+
+	/**
+	 * Shares the structure and entries of symbolic, for subclasses that only change how values are computed
+	 */
+	SparseHessian(SparseHessian symbolic) {
+		this(symbolic.size, symbolic.rowStart, symbolic.cols, symbolic.entries, symbolic.zero);
+	}
+
+	/**
+	 * Stores every entry of the upper triangle, for functions that can't tell which second derivatives vanish
+	 */
+	static SparseHessian of(NFunction func, int maxIndex) {
+		int[] rowStart = new int[maxIndex+1];
+		int[] cols = new int[maxIndex*(maxIndex+1)/2];
+		NFunction[] entries = new NFunction[cols.length];
+		int k = 0;
+		for (int r = 0; r < maxIndex; r++) {
+			rowStart[r] = k;
+			NFunction first = func.derivative(r+1);
+			for (int c = r; c < maxIndex; c++) {
+				cols[k] = c;
+				entries[k++] = first.derivative(c+1);
+			}
+		}
+		rowStart[maxIndex] = k;
+		return new SparseHessian(maxIndex, rowStart, cols, entries, null);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getNonZeroCount() {
+		return entries.length;
+	}
+
+	public NFunction get(int row, int col) {
+		if (row > col) { int swap = row; row = col; col = swap; }
+		int index = Arrays.binarySearch(cols, rowStart[row], rowStart[row+1], col);
+		if (index < 0) return zero;
+		return entries[index];
+	}
+
+	/**
+	 * Dense symbolic form, both triangles share the same entries and every structural zero is one shared instance.
+	 * Its primitive value evaluates through this sparse form, each stored entry once.
+	 */
+	public NFunctionMatrix toMatrix() {
+		NFunction[][] hessian = new NFunction[size][size];
+		for (NFunction[] row : hessian) Arrays.fill(row, zero);
+		for (int r = 0; r < size; r++) {
+			for (int k = rowStart[r]; k < rowStart[r+1]; k++) {
+				hessian[r][cols[k]] = entries[k];
+				hessian[cols[k]][r] = entries[k];
+			}
+		}
+		return new NFunctionMatrix(hessian) {
+			public void value(double[] x, DenseMatrix out) {
+				SparseHessian.this.value(x, out);
+			}
+		};
+	}
+
+	public Matrix<Scalar> value(Vector<Scalar> x) {
+		DenseMatrix out = new DenseMatrix(size, size);
+		double[] point = new double[x.getSize()];
+		for (int i = 0; i < point.length; i++) point[i] = x.get(i).value();
+		value(point, out);
+		return out.toMatrix();
+	}
+
+	/**
+	 * Evaluates only the stored entries and mirrors them, every other entry of out is set to 0
+	 */
+	public void value(double[] x, DenseMatrix out) {
+		if (out.getRows() != size || out.getCols() != size) throw new RuntimeException("Hessian bad dimensions");
+		for (int i = 0; i < out.getSize(); i++) out.set(i, 0);
+		for (int r = 0; r < size; r++) {
+			for (int k = rowStart[r]; k < rowStart[r+1]; k++) {
+				double value = entries[k].value(x);
+				out.set(r, cols[k], value);
+				out.set(cols[k], r, value);
+			}
+		}
+	}
+
+}
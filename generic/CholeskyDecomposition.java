@@ -0,0 +1,141 @@
+package generic;
+
+/**
+ * Cholesky factorization A = L*L^T of a symmetric matrix, only the lower triangle of A is read.
+ * factorModified() shifts an indefinite matrix by a multiple of the identity until it
+ * is positive definite (Nocedal &amp; Wright, Algorithm 3.3).
+ */
+public class CholeskyDecomposition {
+
+    private static final double SHIFT_BETA = 0.001;  // Smallest shift tried for indefinite matrices
+
+    final int size;
+    final double[] l;       // L on and below the diagonal
+    final double[] work;
+    boolean positiveDefinite;
+    double shift;
+
+    public CholeskyDecomposition(DenseMatrix matrix) {
+        this(matrix.getRows());
+        factor(matrix);
+    }
+
+    /**
+     * Creates an empty decomposition that can be refilled with factor() without reallocating
+     */
+    public CholeskyDecomposition(int size) {
+        this.size = size;
+        this.l = new double[size*size];
+        this.work = new double[size];
+    }
+
+    /**
+     * @return false if the matrix is not positive definite, in which case the factor is unusable
+     */
+    public boolean factor(DenseMatrix matrix) {
+        checkSize(matrix);
+        shift = 0;
+        positiveDefinite = factor(matrix.data, 0);
+        return positiveDefinite;
+    }
+
+    /**
+     * Factors A + tau*I for the smallest tau in the sequence 0 (or -min(a_ii)+beta), 2*tau, 4*tau...
+     * that makes it positive definite. The chosen tau is available from getShift().
+     * Throws if the lower triangle holds NaN or infinite entries, no shift can fix those.
+     */
+    public void factorModified(DenseMatrix matrix) {
+        checkSize(matrix);
+        double[] a = matrix.data;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j <= i; j++) {
+                if (!Double.isFinite(a[i*size+j])) throw new RuntimeException("Can't factor matrix with non-finite entry at ("+i+", "+j+")");
+            }
+        }
+        double minDiag = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) minDiag = Math.min(minDiag, a[i*size+i]);
+
+        double tau = (minDiag > 0) ? 0 : -minDiag + SHIFT_BETA;
+        while (!factor(a, tau)) {
+            tau = Math.max(2*tau, SHIFT_BETA);
+            // Also ends on NaN, e.g. from overflow inside the factorization
+            if (!(tau < Double.POSITIVE_INFINITY)) throw new RuntimeException("Modified Cholesky failed to converge");
+        }
+        shift = tau;
+        positiveDefinite = true;
+    }
+
+    private void checkSize(DenseMatrix matrix) {
+        if (matrix.getRows() != matrix.getCols()) throw new RuntimeException("Can't factor non-square matrix");
+        if (matrix.getRows() != size) throw new RuntimeException("Cholesky decomposition bad dimensions");
+    }
+
+    private boolean factor(double[] a, double tau) {
+        Kernels kernels = Kernels.get();
+        for (int j = 0; j < size; j++) {
+            double d = a[j*size+j] + tau - kernels.dot(l, j*size, l, j*size, j);
+            if (!(d > 0)) return false;
+            d = Math.sqrt(d);
+            l[j*size+j] = d;
+
+            for (int i = j+1; i < size; i++) {
+                double sum = a[i*size+j] - kernels.dot(l, i*size, l, j*size, j);
+                l[i*size+j] = sum / d;
+            }
+        }
+        return true;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isPositiveDefinite() {
+        return positiveDefinite;
+    }
+
+    /**
+     * Multiple of the identity added by factorModified(), 0 after factor()
+     */
+    public double getShift() {
+        return shift;
+    }
+
+    public double determinant() {
+        double det = 1;
+        for (int i = 0; i < size; i++) {
+            det *= l[i*size+i];
+        }
+        return det * det;
+    }
+
+    public DenseVector solve(DenseVector b) {
+        double[] x = new double[size];
+        solve(b.data, x);
+        return new DenseVector(x, false);
+    }
+
+    /**
+     * Solves (A + shift*I)*x = b, writing into x. b and x may be the same array.
+     */
+    public void solve(double[] b, double[] x) {
+        if (!positiveDefinite) throw new RuntimeException("Matrix is not positive definite");
+        if (b.length != size || x.length != size) throw new RuntimeException("Cholesky solve bad dimensions");
+
+        // Forward substitution, L*y = b
+        Kernels kernels = Kernels.get();
+        for (int r = 0; r < size; r++) {
+            double sum = b[r] - kernels.dot(l, r*size, work, 0, r);
+            work[r] = sum / l[r*size+r];
+        }
+
+        // Back substitution, L^T*x = y
+        for (int r = size-1; r >= 0; r--) {
+            double sum = work[r];
+            for (int c = r+1; c < size; c++) sum -= l[c*size+r] * work[c];
+            work[r] = sum / l[r*size+r];
+        }
+        System.arraycopy(work, 0, x, 0, size);
+    }
+
+}
@@ -0,0 +1,267 @@
+package generic;
+
+import java.util.Arrays;
+
+/**
+ * Primitive matrix of doubles stored as a flat row-major array.
+ * Counterpart of Matrix&lt;Scalar&gt; that does not box its elements.
+ */
+public class DenseMatrix {
+
+    final int rows, cols;
+    final double[] data;
+
+    public static DenseMatrix identity(int size) {
+        DenseMatrix ident = new DenseMatrix(size, size);
+        for (int i = 0; i < size; i++) {
+            ident.data[i * size + i] = 1;
+        }
+        return ident;
+    }
+
+    public static DenseMatrix fromMatrix(Matrix<? extends Value> matrix) {
+        if (matrix instanceof Vector) return DenseVector.fromVector((Vector<? extends Value>) matrix);
+        DenseMatrix dense = new DenseMatrix(matrix.getRows(), matrix.getCols());
+        for (int r = 0; r < dense.rows; r++) {
+            for (int c = 0; c < dense.cols; c++) {
+                dense.data[r * dense.cols + c] = scalarValue(matrix.get(r, c));
+            }
+        }
+        return dense;
+    }
+
+    static double scalarValue(Value val) {
+        if (val instanceof Scalar) return ((Scalar) val).value();
+        else throw new RuntimeException("Value is not scalar compatible: \""+val.toString()+"\"");
+    }
+
+    public DenseMatrix(int rows, int cols) {
+        this(rows, cols, new double[rows*cols]);
+    }
+
+    // Does not copy, callers inside the package hand over ownership of the array
+    DenseMatrix(int rows, int cols, double[] data) {
+        if (rows <= 0 || cols <= 0) throw new RuntimeException("Zero dimension");
+        if (data.length < rows*cols) throw new RuntimeException("Too few values");
+        if (data.length > rows*cols) throw new RuntimeException("Too many values");
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+    }
+
+    // Default constructor, copy array for security
+    public DenseMatrix(double[][] values) {
+        this(values.length, values.length == 0 ? 0 : values[0].length);
+        for (int i = 0; i < rows; i++) {
+            if (values[i].length != cols) throw new RuntimeException("Non-square matrix");
+            System.arraycopy(values[i], 0, this.data, i*cols, cols);
+        }
+    }
+
+    public Matrix<Scalar> toMatrix() {
+        Scalar[] values = new Scalar[data.length];
+        for (int i = 0; i < data.length; i++) {
+            values[i] = new Scalar(data[i]);
+        }
+        return new Matrix<>(rows, cols, values, false);
+    }
+
+    public DenseVector asVector() {
+        if (this instanceof DenseVector) return (DenseVector) this;
+        if (cols == 1) {
+            return new DenseVector(data, false);
+        } else if (rows == 1) {
+            return new DenseVector(data, true);
+        } else {
+            throw new RuntimeException("Matrix is not a vector");
+        }
+    }
+
+    public DenseMatrix copy() {
+        return new DenseMatrix(rows, cols, data.clone());
+    }
+
+    public DenseMatrix transpose() {
+        double[] out = new double[data.length];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                out[c * rows + r] = data[r * cols + c];
+            }
+        }
+        return new DenseMatrix(cols, rows, out);
+    }
+
+    public int getSize() {
+        return rows * cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public double get(int row, int col) {
+        return data[row*cols+col];
+    }
+
+    public double get(int index) {
+        return data[index];
+    }
+
+    public void set(int row, int col, double value) {
+        data[row*cols+col] = value;
+    }
+
+    public void set(int index, double value) {
+        data[index] = value;
+    }
+
+    public DenseVector getRow(int row) {
+        double[] vector = new double[cols];
+        System.arraycopy(data, row*cols, vector, 0, cols);
+        return new DenseVector(vector, true); // row vector
+    }
+
+    public DenseVector getCol(int col) {
+        double[] vector = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            vector[i] = data[i*cols+col];
+        }
+        return new DenseVector(vector, false); // column vector
+    }
+
+    public DenseMatrix negate() {
+        return this.multiply(-1);
+    }
+
+    public DenseMatrix add(DenseMatrix other) {
+        if (other.rows != rows || other.cols != cols) {
+            throw new RuntimeException("Cannot add matrices of different sizes");
+        }
+        double[] out = data.clone();
+        Kernels.get().axpy(1, other.data, out);
+        return new DenseMatrix(rows, cols, out);
+    }
+
+    public DenseMatrix multiply(double other) {
+        double[] out = data.clone();
+        Kernels.get().scal(other, out);
+        return new DenseMatrix(rows, cols, out);
+    }
+
+    public DenseMatrix multiply(DenseMatrix other) {
+        if (this.cols != other.rows) throw new RuntimeException("Matrix multiplication bad dimensions");
+        int n = other.cols;
+        double[] out = new double[this.rows * n];
+        Kernels.get().gemm(this.rows, n, this.cols, this.data, other.data, out);
+        if (n == 1) return new DenseVector(out, false);
+        if (this.rows == 1) return new DenseVector(out, true);
+        return new DenseMatrix(this.rows, n, out);
+    }
+
+    public DenseVector multiply(DenseVector other) {
+        return multiply((DenseMatrix) other).asVector();
+    }
+
+    /**
+     * Matrix-vector product into a caller supplied buffer, out = this*x. out must not alias x.
+     */
+    public void multiply(double[] x, double[] out) {
+        if (x.length != cols || out.length != rows) throw new RuntimeException("Matrix multiplication bad dimensions");
+        Kernels.get().gemv(rows, cols, data, x, out);
+    }
+
+    /**
+     * Overwrites this square matrix with the identity
+     */
+    public void setIdentity() {
+        if (rows != cols) throw new RuntimeException("Non-square identity");
+        Arrays.fill(data, 0);
+        for (int i = 0; i < rows; i++) data[i*cols+i] = 1;
+    }
+
+    /**
+     * Symmetric rank-one update in place, this += alpha*u*u^T
+     */
+    public void rankOneUpdate(double alpha, double[] u) {
+        if (u.length != rows || rows != cols) throw new RuntimeException("Rank one update bad dimensions");
+        Kernels kernels = Kernels.get();
+        for (int r = 0; r < rows; r++) {
+            kernels.axpy(alpha*u[r], u, 0, data, r*cols, cols);
+        }
+    }
+
+    /**
+     * Symmetric rank-two update in place, this += u*v^T + v*u^T
+     */
+    public void rankTwoUpdate(double[] u, double[] v) {
+        if (u.length != rows || v.length != cols || rows != cols) throw new RuntimeException("Rank two update bad dimensions");
+        Kernels kernels = Kernels.get();
+        for (int r = 0; r < rows; r++) {
+            kernels.axpy(u[r], v, 0, data, r*cols, cols);
+            kernels.axpy(v[r], u, 0, data, r*cols, cols);
+        }
+    }
+
+    public DenseVector solve(DenseVector rhs) {
+        return solve(rhs, SolveMethod.LU);
+    }
+
+    /**
+     * Solves this*x = rhs without forming an inverse.
+     * The symmetric methods only read the lower triangle of this matrix.
+     */
+    public DenseVector solve(DenseVector rhs, SolveMethod method) {
+        if (rows != cols) throw new RuntimeException("Can't solve non-square system");
+        if (rhs.getSize() != rows) throw new RuntimeException("Linear solve bad dimensions");
+        switch (method) {
+            case LU:
+                LUDecomposition lu = new LUDecomposition(this);
+                if (lu.isSingular()) throw new RuntimeException("Non-invertible matrix:\n"+this);
+                return lu.solve(rhs);
+            case CHOLESKY:
+                CholeskyDecomposition chol = new CholeskyDecomposition(this);
+                if (!chol.isPositiveDefinite()) throw new RuntimeException("Matrix is not positive definite:\n"+this);
+                return chol.solve(rhs);
+            case LDLT:
+                LDLDecomposition ldl = new LDLDecomposition(this);
+                if (ldl.isSingular()) throw new RuntimeException("Non-invertible matrix:\n"+this);
+                return ldl.solve(rhs);
+            case MODIFIED_CHOLESKY:
+                CholeskyDecomposition mod = new CholeskyDecomposition(rows);
+                mod.factorModified(this);
+                return mod.solve(rhs);
+            default:
+                throw new RuntimeException("Unknown solve method "+method);
+        }
+    }
+
+    private static final int PADDING = 2;
+
+    public String toString() {
+        String[] valStr = new String[data.length];
+        int[] widths = new int[cols];
+        for (int i = 0; i < data.length; i++) {
+            valStr[i] = String.valueOf(data[i]);
+            int c = i % cols;
+            if (valStr[i].length() > widths[c]) widths[c] = valStr[i].length();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < rows; r++) {
+            sb.append('[');
+            for (int c = 0; c < cols; c++) {
+                String s = valStr[r*cols+c];
+                for (int p = 0; p < PADDING; p++) sb.append(' ');
+                sb.append(s);
+                for (int p = s.length(); p < widths[c]; p++) sb.append(' ');
+            }
+            sb.append(' ').append(' ').append(']').append('\n');
+        }
+        return sb.toString();
+    }
+
+}
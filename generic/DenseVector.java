@@ -0,0 +1,104 @@
+package generic;
+
+/**
+ * Primitive vector of doubles, a column (or row) DenseMatrix.
+ * Counterpart of Vector&lt;Scalar&gt; that does not box its elements.
+ */
+public class DenseVector extends DenseMatrix {
+
+    public static DenseVector fromVector(Vector<? extends Value> vector) {
+        double[] values = new double[vector.getSize()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = scalarValue(vector.get(i));
+        }
+        return new DenseVector(values, vector.isRow() && vector.getSize() > 1);
+    }
+
+    /**
+     * Column vector backed by values without copying, writes to either are seen by both
+     */
+    public static DenseVector wrap(double[] values) {
+        return new DenseVector(values, false);
+    }
+
+    public DenseVector(int size) {
+        this(new double[size], false);
+    }
+
+    // Default constructor, copy array for security
+    public DenseVector(double... values) {
+        this(values.clone(), false);
+    }
+
+    // Does not copy, callers inside the package hand over ownership of the array
+    DenseVector(double[] values, boolean transpose) {
+        super(transpose ? 1 : values.length, transpose ? values.length : 1, values);
+    }
+
+    public Vector<Scalar> toVector() {
+        return new Vector<>(Scalar.array(data), isRow() && getSize() > 1);
+    }
+
+    public DenseMatrix asMatrix() {
+        return this;
+    }
+
+    public DenseVector copy() {
+        return new DenseVector(data.clone(), isRow() && getSize() > 1);
+    }
+
+    public DenseVector transpose() {
+        return new DenseVector(data.clone(), !isRow() || getSize() == 1);
+    }
+
+    public double[] toArray() {
+        return data.clone();
+    }
+
+    public boolean isColumn() {
+        return cols == 1;
+    }
+
+    public boolean isRow() {
+        return rows == 1;
+    }
+
+    public double norm2() {
+        return Math.sqrt(this.dot(this));
+    }
+
+    public double dot(DenseVector other) {
+        return Kernels.get().dot(data, other.data);
+    }
+
+    public DenseVector negate() {
+        return super.negate().asVector();
+    }
+
+    public DenseVector add(DenseVector other) {
+        return super.add(other).asVector();
+    }
+
+    public DenseVector multiply(double other) {
+        return super.multiply(other).asVector();
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (isColumn()) sb.append('<');
+        else sb.append('[');
+
+        boolean separate = false;
+        for (int i = 0; i < data.length; i++) {
+            if (separate) sb.append(", ");
+            sb.append(data[i]);
+            separate = true;
+        }
+
+        if (isColumn()) sb.append('>');
+        else sb.append(']');
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,109 @@
+package generic;
+
+/**
+ * Dense double kernels behind DenseMatrix, DenseVector and the factorizations.
+ * Two implementations exist: plain loops, and SIMD through the jdk.incubator.vector module,
+ * which is only usable when the JVM was started with --add-modules jdk.incubator.vector.
+ *
+ * The implementation is picked from the generic.kernels system property ("auto", "simd" or "scalar",
+ * default "auto") and can be switched at runtime with use().
+ */
+public abstract class Kernels {
+
+    private static final Kernels SCALAR = new ScalarKernels();
+    private static final Kernels SIMD = loadSimd();
+    private static volatile Kernels current = select(System.getProperty("generic.kernels", "auto"));
+
+    private static Kernels loadSimd() {
+        try {
+            return (Kernels) Class.forName("generic.SimdKernels").getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            return null; // Vector API module absent
+        }
+    }
+
+    private static Kernels select(String name) {
+        switch (name) {
+            case "auto":
+                return (SIMD != null) ? SIMD : SCALAR;
+            case "simd":
+                if (SIMD == null) throw new RuntimeException("SIMD kernels need --add-modules jdk.incubator.vector");
+                return SIMD;
+            case "scalar":
+                return SCALAR;
+            default:
+                throw new RuntimeException("Unknown kernels \""+name+"\", expected auto, simd or scalar");
+        }
+    }
+
+    public static Kernels get() {
+        return current;
+    }
+
+    /**
+     * Switches every caller to the named implementation, "auto", "simd" or "scalar"
+     */
+    public static void use(String name) {
+        current = select(name);
+    }
+
+    public static boolean isSimdAvailable() {
+        return SIMD != null;
+    }
+
+    public abstract String getName();
+
+    /**
+     * Sum of x[xOffset+i]*y[yOffset+i] for i < n
+     */
+    public abstract double dot(double[] x, int xOffset, double[] y, int yOffset, int n);
+
+    /**
+     * y[yOffset+i] += alpha*x[xOffset+i] for i < n
+     */
+    public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n);
+
+    /**
+     * x[offset+i] *= alpha for i < n
+     */
+    public abstract void scal(double alpha, double[] x, int offset, int n);
+
+    public double dot(double[] x, double[] y) {
+        if (x.length != y.length) throw new RuntimeException("Vector dot product bad dimensions");
+        return dot(x, 0, y, 0, x.length);
+    }
+
+    public void axpy(double alpha, double[] x, double[] y) {
+        if (x.length != y.length) throw new RuntimeException("Vector axpy bad dimensions");
+        axpy(alpha, x, 0, y, 0, x.length);
+    }
+
+    public void scal(double alpha, double[] x) {
+        scal(alpha, x, 0, x.length);
+    }
+
+    /**
+     * y = A*x for a row-major rows x cols matrix A. y must not alias x.
+     */
+    public void gemv(int rows, int cols, double[] a, double[] x, double[] y) {
+        for (int r = 0; r < rows; r++) {
+            y[r] = dot(a, r*cols, x, 0, cols);
+        }
+    }
+
+    /**
+     * c = A*B for row-major A (m x k) and B (k x n), overwriting c (m x n).
+     * i-k-j order so the inner kernel walks rows of B and C.
+     */
+    public void gemm(int m, int n, int k, double[] a, double[] b, double[] c) {
+        for (int r = 0; r < m; r++) {
+            int cRow = r*n;
+            for (int j = 0; j < n; j++) c[cRow+j] = 0;
+            for (int i = 0; i < k; i++) {
+                double alpha = a[r*k+i];
+                if (alpha != 0) axpy(alpha, b, i*n, c, cRow, n);
+            }
+        }
+    }
+
+}
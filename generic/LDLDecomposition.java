@@ -0,0 +1,238 @@
+package generic;
+
+/**
+ * Square-root free factorization P*A*P^T = L*D*L^T of a symmetric matrix, only the lower triangle of A is read.
+ * Bunch-Kaufman pivoting: symmetric interchanges pick 1x1 or 2x2 diagonal blocks for D so that element
+ * growth stays bounded, any nonsingular symmetric matrix, definite or not, can be factored.
+ */
+public class LDLDecomposition {
+
+    private static final double EPSILON = Math.ulp(1.0);
+    private static final double ALPHA = (1 + Math.sqrt(17)) / 8;  // Balances the growth of 1x1 and 2x2 steps
+
+    final int size;
+    final double[] l;       // L strictly below the diagonal (unit diagonal implied), D on the diagonal
+    final double[] offDiagonal; // offDiagonal[k] is D[k+1][k] where a 2x2 block starts at k
+    final boolean[] pair;   // pair[k] when a 2x2 block of D starts at k
+    final int[] perm;       // Row i of P*A is row perm[i] of A
+    final double[] work, work2;
+    boolean singular;
+
+    public LDLDecomposition(DenseMatrix matrix) {
+        this(matrix.getRows());
+        factor(matrix);
+    }
+
+    /**
+     * Creates an empty decomposition that can be refilled with factor() without reallocating
+     */
+    public LDLDecomposition(int size) {
+        this.size = size;
+        this.l = new double[size*size];
+        this.offDiagonal = new double[size];
+        this.pair = new boolean[size];
+        this.perm = new int[size];
+        this.work = new double[size];
+        this.work2 = new double[size];
+    }
+
+    /**
+     * @return false if the matrix is singular, in which case the factor is unusable
+     */
+    public boolean factor(DenseMatrix matrix) {
+        if (matrix.getRows() != matrix.getCols()) throw new RuntimeException("Can't factor non-square matrix");
+        if (matrix.getRows() != size) throw new RuntimeException("LDL decomposition bad dimensions");
+        double[] a = matrix.data;
+
+        double maxAbs = 0;
+        for (double v : a) maxAbs = Math.max(maxAbs, Math.abs(v));
+        double tolerance = size * EPSILON * maxAbs;
+        singular = maxAbs == 0;
+
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) l[i*size+j] = (j <= i) ? a[i*size+j] : 0;
+            perm[i] = i;
+            pair[i] = false;
+            offDiagonal[i] = 0;
+        }
+
+        // Right-looking, the trailing lower triangle holds the updated matrix still to be factored
+        int k = 0;
+        while (k < size && !singular) {
+            double absakk = Math.abs(l[k*size+k]);
+            int imax = k;
+            double colmax = 0;
+            for (int i = k+1; i < size; i++) {
+                double v = Math.abs(l[i*size+k]);
+                if (v > colmax) {
+                    colmax = v;
+                    imax = i;
+                }
+            }
+            if (Math.max(absakk, colmax) <= tolerance) {
+                singular = true;
+                break;
+            }
+
+            int kp = k, step = 1;
+            if (absakk < ALPHA*colmax) {
+                // Largest off-diagonal in row and column imax
+                double rowmax = 0;
+                for (int j = k; j < imax; j++) rowmax = Math.max(rowmax, Math.abs(l[imax*size+j]));
+                for (int i = imax+1; i < size; i++) rowmax = Math.max(rowmax, Math.abs(l[i*size+imax]));
+
+                if (absakk >= ALPHA*colmax*(colmax/rowmax)) {
+                    kp = k;
+                } else if (Math.abs(l[imax*size+imax]) >= ALPHA*rowmax) {
+                    kp = imax;
+                } else {
+                    kp = imax;
+                    step = 2;
+                }
+            }
+
+            int kk = k + step - 1;
+            if (kp != kk) interchange(kk, kp);
+            if (step == 1) pivot(k);
+            else pivotPair(k);
+            k += step;
+        }
+        return !singular;
+    }
+
+    /**
+     * Swaps rows and columns p < q of the trailing matrix and rows p and q of the finished columns of L
+     */
+    private void interchange(int p, int q) {
+        for (int c = 0; c < p; c++) swap(p*size+c, q*size+c);
+        for (int i = p+1; i < q; i++) swap(i*size+p, q*size+i);
+        swap(p*size+p, q*size+q);
+        for (int i = q+1; i < size; i++) swap(i*size+p, i*size+q);
+        int t = perm[p]; perm[p] = perm[q]; perm[q] = t;
+    }
+
+    private void swap(int i, int j) {
+        double t = l[i]; l[i] = l[j]; l[j] = t;
+    }
+
+    private void pivot(int k) {
+        double d = l[k*size+k];
+        for (int i = k+1; i < size; i++) work[i] = l[i*size+k];
+        Kernels kernels = Kernels.get();
+        for (int i = k+1; i < size; i++) {
+            double li = work[i] / d;
+            kernels.axpy(-li, work, k+1, l, i*size+k+1, i-k);
+            l[i*size+k] = li;
+        }
+    }
+
+    private void pivotPair(int k) {
+        double d11 = l[k*size+k], d21 = l[(k+1)*size+k], d22 = l[(k+1)*size+k+1];
+        double det = d11*d22 - d21*d21;
+        for (int i = k+2; i < size; i++) {
+            work[i] = l[i*size+k];
+            work2[i] = l[i*size+k+1];
+        }
+        Kernels kernels = Kernels.get();
+        for (int i = k+2; i < size; i++) {
+            // Row i of L is the row of A times the inverse of the block
+            double w1 = (work[i]*d22 - work2[i]*d21) / det;
+            double w2 = (work2[i]*d11 - work[i]*d21) / det;
+            kernels.axpy(-w1, work, k+2, l, i*size+k+2, i-k-1);
+            kernels.axpy(-w2, work2, k+2, l, i*size+k+2, i-k-1);
+            l[i*size+k] = w1;
+            l[i*size+k+1] = w2;
+        }
+        offDiagonal[k] = d21;
+        l[(k+1)*size+k] = 0;
+        pair[k] = true;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isSingular() {
+        return singular;
+    }
+
+    /**
+     * Number of negative eigenvalues of D, which by Sylvester's law equals the number of negative eigenvalues of A
+     */
+    public int getNegativeCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            double d = l[i*size+i];
+            if (pair[i]) {
+                // A 2x2 block with negative determinant has one eigenvalue of each sign
+                double d22 = l[(i+1)*size+i+1];
+                double det = d*d22 - offDiagonal[i]*offDiagonal[i];
+                if (det < 0) count++;
+                else if (d + d22 < 0) count += 2;
+                i++;
+            } else if (d < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * det(A) = det(D), the symmetric permutation does not change it
+     */
+    public double determinant() {
+        double det = 1;
+        for (int i = 0; i < size; i++) {
+            if (pair[i]) {
+                det *= l[i*size+i]*l[(i+1)*size+i+1] - offDiagonal[i]*offDiagonal[i];
+                i++;
+            } else {
+                det *= l[i*size+i];
+            }
+        }
+        return det;
+    }
+
+    public DenseVector solve(DenseVector b) {
+        double[] x = new double[size];
+        solve(b.data, x);
+        return new DenseVector(x, false);
+    }
+
+    /**
+     * Solves A*x = b, writing into x. b and x may be the same array.
+     */
+    public void solve(double[] b, double[] x) {
+        if (singular) throw new RuntimeException("Matrix is singular");
+        if (b.length != size || x.length != size) throw new RuntimeException("LDL solve bad dimensions");
+
+        // Forward substitution, L*y = P*b
+        Kernels kernels = Kernels.get();
+        for (int r = 0; r < size; r++) {
+            work[r] = b[perm[r]] - kernels.dot(l, r*size, work, 0, r);
+        }
+
+        // Block diagonal, D*z = y
+        for (int r = 0; r < size; r++) {
+            if (pair[r]) {
+                double d11 = l[r*size+r], d21 = offDiagonal[r], d22 = l[(r+1)*size+r+1];
+                double det = d11*d22 - d21*d21;
+                double y1 = work[r], y2 = work[r+1];
+                work[r] = (d22*y1 - d21*y2) / det;
+                work[r+1] = (d11*y2 - d21*y1) / det;
+                r++;
+            } else {
+                work[r] /= l[r*size+r];
+            }
+        }
+
+        // Back substitution, L^T*w = z, then x = P^T*w
+        for (int r = size-1; r >= 0; r--) {
+            double sum = work[r];
+            for (int c = r+1; c < size; c++) sum -= l[c*size+r] * work[c];
+            work[r] = sum;
+        }
+        for (int r = 0; r < size; r++) x[perm[r]] = work[r];
+    }
+
+}
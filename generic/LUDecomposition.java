@@ -0,0 +1,151 @@
+package generic;
+
+import java.util.Arrays;
+
+/**
+ * LU factorization with partial pivoting, PA = LU.
+ * Factor once in O(n^3), then solve, invert or take the determinant cheaply.
+ */
+public class LUDecomposition {
+
+    private static final double EPSILON = Math.ulp(1.0);
+
+    final int size;
+    final double[] lu;      // L below the diagonal (unit diagonal implied), U on and above
+    final int[] pivot;
+    final double[] work;
+    int pivotSign;
+    boolean singular;
+    double pivotRatio;
+
+    public LUDecomposition(DenseMatrix matrix) {
+        this(matrix.getRows());
+        factor(matrix);
+    }
+
+    /**
+     * Creates an empty decomposition that can be refilled with factor() without reallocating
+     */
+    public LUDecomposition(int size) {
+        this.size = size;
+        this.lu = new double[size*size];
+        this.pivot = new int[size];
+        this.work = new double[size];
+    }
+
+    public void factor(DenseMatrix matrix) {
+        if (matrix.getRows() != matrix.getCols()) throw new RuntimeException("Can't factor non-square matrix");
+        if (matrix.getRows() != size) throw new RuntimeException("LU decomposition bad dimensions");
+        System.arraycopy(matrix.data, 0, lu, 0, lu.length);
+        for (int i = 0; i < size; i++) pivot[i] = i;
+        pivotSign = 1;
+
+        double maxAbs = 0;
+        for (double v : lu) maxAbs = Math.max(maxAbs, Math.abs(v));
+        double tolerance = size * EPSILON * maxAbs;
+        double minPivot = Double.POSITIVE_INFINITY, maxPivot = 0;
+        singular = maxAbs == 0;
+        Kernels kernels = Kernels.get();
+
+        for (int k = 0; k < size; k++) {
+            // Partial pivoting: bring the largest remaining entry of column k onto the diagonal
+            int p = k;
+            double best = Math.abs(lu[k*size+k]);
+            for (int r = k+1; r < size; r++) {
+                double v = Math.abs(lu[r*size+k]);
+                if (v > best) { best = v; p = r; }
+            }
+            if (p != k) {
+                for (int c = 0; c < size; c++) {
+                    double swap = lu[p*size+c]; lu[p*size+c] = lu[k*size+c]; lu[k*size+c] = swap;
+                }
+                int swap = pivot[p]; pivot[p] = pivot[k]; pivot[k] = swap;
+                pivotSign = -pivotSign;
+            }
+
+            minPivot = Math.min(minPivot, best);
+            maxPivot = Math.max(maxPivot, best);
+            if (best <= tolerance) {
+                singular = true;
+                continue;
+            }
+
+            double diag = lu[k*size+k];
+            for (int r = k+1; r < size; r++) {
+                double factor = (lu[r*size+k] /= diag);
+                if (factor == 0) continue;
+                kernels.axpy(-factor, lu, k*size+k+1, lu, r*size+k+1, size-k-1);
+            }
+        }
+        pivotRatio = maxPivot == 0 ? 0 : minPivot / maxPivot;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * True when a pivot fell below n*eps*max|a_ij|, i.e. the matrix is singular to working precision
+     */
+    public boolean isSingular() {
+        return singular;
+    }
+
+    /**
+     * Ratio of the smallest to the largest pivot, a cheap lower-quality estimate of the
+     * reciprocal condition number. Values near zero mean solutions are unreliable.
+     */
+    public double getPivotRatio() {
+        return pivotRatio;
+    }
+
+    public double determinant() {
+        double det = pivotSign;
+        for (int i = 0; i < size; i++) {
+            det *= lu[i*size+i];
+        }
+        return det;
+    }
+
+    public DenseVector solve(DenseVector b) {
+        double[] x = new double[size];
+        solve(b.data, x);
+        return new DenseVector(x, false);
+    }
+
+    /**
+     * Solves A*x = b, writing into x. b and x may be the same array.
+     */
+    public void solve(double[] b, double[] x) {
+        if (singular) throw new RuntimeException("Matrix is singular");
+        if (b.length != size || x.length != size) throw new RuntimeException("LU solve bad dimensions");
+
+        for (int i = 0; i < size; i++) work[i] = b[pivot[i]];
+        System.arraycopy(work, 0, x, 0, size);
+
+        // Forward substitution, L*y = P*b
+        Kernels kernels = Kernels.get();
+        for (int r = 1; r < size; r++) {
+            x[r] -= kernels.dot(lu, r*size, x, 0, r);
+        }
+
+        // Back substitution, U*x = y
+        for (int r = size-1; r >= 0; r--) {
+            double sum = x[r] - kernels.dot(lu, r*size+r+1, x, r+1, size-r-1);
+            x[r] = sum / lu[r*size+r];
+        }
+    }
+
+    public DenseMatrix inverse() {
+        double[] inv = new double[size*size];
+        double[] col = new double[size];
+        for (int c = 0; c < size; c++) {
+            Arrays.fill(col, 0);
+            col[c] = 1;
+            solve(col, col);
+            for (int r = 0; r < size; r++) inv[r*size+c] = col[r];
+        }
+        return new DenseMatrix(size, size, inv);
+    }
+
+}
@@ -167,6 +167,9 @@ public class Matrix<T extends Value> {
 
     public Value determinant() {
         if (getRows() != getCols()) throw new RuntimeException("Can't computer determinant of non-square matrix");
+        if (isScalar()) return new Scalar(decompose().determinant());
+
+        // Cofactor expansion, only for symbolic values that can't be pivoted
         if (getRows() == 1) return get(0,0);
         if (getRows() == 2) return get(0,0).multiply(get(1,1)).add(get(1,0).multiply(get(0,1)).negate());
         Value det = new Scalar(0);
@@ -180,11 +183,43 @@ public class Matrix<T extends Value> {
     @SuppressWarnings("unchecked")
     public Matrix<Value> inverse() {
         if (getRows() != getCols()) throw new RuntimeException("Can't computer inverse of non-square matrix");
+        if (isScalar()) {
+            LUDecomposition lu = decompose();
+            if (lu.isSingular()) return null; // Non-invertible
+            return lu.inverse().toMatrix().toValues();
+        }
+
         Value det = determinant();
         if (((Scalar) det).value() == 0) return null; // Non-invertible
         return adjoint().multiply(det.reciprocal());
     }
 
+    /**
+     * LU factorization of this matrix, only works on Matrix&lt;Scalar&gt;
+     */
+    public LUDecomposition decompose() {
+        if (getRows() != getCols()) throw new RuntimeException("Can't factor non-square matrix");
+        return new LUDecomposition(DenseMatrix.fromMatrix(this));
+    }
+
+    public Vector<Scalar> solve(Vector<? extends Value> rhs) {
+        return solve(rhs, SolveMethod.LU);
+    }
+
+    /**
+     * Solves this*x = rhs without forming an inverse, only works on Matrix&lt;Scalar&gt;
+     */
+    public Vector<Scalar> solve(Vector<? extends Value> rhs, SolveMethod method) {
+        return DenseMatrix.fromMatrix(this).solve(DenseVector.fromVector(rhs), method).toVector();
+    }
+
+    boolean isScalar() {
+        for (T value : values) {
+            if (!(value instanceof Scalar)) return false;
+        }
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     public <R extends Value> Matrix<R> apply(Class<R> clazz, Function<T, R> function) {
         R[] output = (R[]) Array.newInstance(clazz, rows*cols);
@@ -0,0 +1,32 @@
+package generic;
+
+/**
+ * Plain loop kernels, always available
+ */
+class ScalarKernels extends Kernels {
+
+    public String getName() {
+        return "scalar";
+    }
+
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int n) {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += x[xOffset+i] * y[yOffset+i];
+        }
+        return sum;
+    }
+
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yOffset+i] += alpha * x[xOffset+i];
+        }
+    }
+
+    public void scal(double alpha, double[] x, int offset, int n) {
+        for (int i = 0; i < n; i++) {
+            x[offset+i] *= alpha;
+        }
+    }
+
+}
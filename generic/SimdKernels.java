@@ -0,0 +1,57 @@
+package generic;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels at the machine's preferred vector width using the Vector API.
+ * Only loaded reflectively by Kernels, so the rest of the package works without the module.
+ */
+class SimdKernels extends Kernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public String getName() {
+        return "simd-"+SPECIES.length();
+    }
+
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int n) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, x, xOffset+i);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, y, yOffset+i);
+            acc = a.fma(b, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            sum += x[xOffset+i] * y[yOffset+i];
+        }
+        return sum;
+    }
+
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n) {
+        DoubleVector scale = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, x, xOffset+i);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, y, yOffset+i);
+            a.fma(scale, b).intoArray(y, yOffset+i);
+        }
+        for (; i < n; i++) {
+            y[yOffset+i] += alpha * x[xOffset+i];
+        }
+    }
+
+    public void scal(double alpha, double[] x, int offset, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, offset+i).mul(alpha).intoArray(x, offset+i);
+        }
+        for (; i < n; i++) {
+            x[offset+i] *= alpha;
+        }
+    }
+
+}
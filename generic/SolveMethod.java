@@ -0,0 +1,20 @@
+package generic;
+
+/**
+ * Factorization used by Matrix.solve and DenseMatrix.solve
+ */
+public enum SolveMethod {
+
+    /** General square systems, LU with partial pivoting */
+    LU,
+
+    /** Symmetric positive definite systems, A = L*L^T */
+    CHOLESKY,
+
+    /** Symmetric nonsingular systems, definite or indefinite, P*A*P^T = L*D*L^T with Bunch-Kaufman pivoting */
+    LDLT,
+
+    /** Symmetric systems, Cholesky of A + tau*I with tau grown until A + tau*I is positive definite */
+    MODIFIED_CHOLESKY
+
+}
@@ -0,0 +1,257 @@
+package main;
+
+import calc.NFunction;
+import calc.NFunctionVector;
+import calc.SparseHessian;
+import generic.DenseMatrix;
+import generic.DenseVector;
+import generic.Kernels;
+import generic.Scalar;
+import generic.Vector;
+
+/**
+ * Iteration bookkeeping shared by the solvers. Subclasses keep their state in primitive
+ * buffers, the Workspace plus their own, and implement a single step on them.
+ */
+public abstract class AbstractOptimizer implements Optimizer {
+
+    final NFunction func;
+    final NFunctionVector gradient;     // Symbolic gradient, null to use func.valueAndGradient
+    final Workspace work;
+    int iteration;
+    boolean done;
+
+    IterationListener listener;
+    IterationEvent event;
+
+    final SolverMetrics metrics = new SolverMetrics();
+
+    LineSearch lineSearch;
+    final SearchLine line = new SearchLine();
+
+    AbstractOptimizer(NFunction func, NFunctionVector gradient, Vector initial, LineSearch lineSearch) {
+        this.func = func;
+        this.gradient = gradient;
+        this.lineSearch = lineSearch;
+        this.work = new Workspace(initial.getSize());
+        double[] start = new double[work.size];
+        for (int i = 0; i < start.length; i++) start[i] = ((Scalar) initial.get(i)).value();
+        work.load(start);
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    public double getValue() {
+        return work.f;
+    }
+
+    public Workspace getWorkspace() {
+        return work;
+    }
+
+    /**
+     * Counters of the current solve, since construction or the last reset
+     */
+    public MetricsSnapshot getMetrics() {
+        metrics.converged = done;
+        return metrics.snapshot();
+    }
+
+    /**
+     * Replaces the solver's default step length rule
+     */
+    public void setLineSearch(LineSearch lineSearch) {
+        if (lineSearch == null) throw new RuntimeException("No line search");
+        this.lineSearch = lineSearch;
+    }
+
+    /**
+     * Attaches the listener receiving this solver's progress, null detaches it
+     */
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+        if (listener != null && event == null) event = new IterationEvent(this, work);
+    }
+
+    public DenseVector iterate() {
+        if (done) return work.point;
+
+        if (iteration == 0) {
+            start();
+        } else {
+            step();
+            metrics.iteration();
+        }
+        if (listener != null) {
+            event.iteration = iteration;
+            event.beta = Double.NaN;
+            describe(event);
+            listener.iteration(event);
+        }
+        iteration++;
+        return work.point;
+    }
+
+    public DenseVector solve(int maxIterations) {
+        while (!done && iteration < maxIterations) iterate();
+        return work.point;
+    }
+
+    public void reset(double[] start) {
+        work.load(start);
+        iteration = 0;
+        done = false;
+        metrics.clear();
+        restart();
+    }
+
+    /**
+     * Iteration 0, evaluates f and g at the start point. From then on every step leaves
+     * work.f and work.g holding f(xk) and g(xk), so no step evaluates xk again.
+     */
+    void start() {
+        work.f = evaluateWithGradient(work.x, work.g);
+        work.gradNorm = norm2(work.g);
+    }
+
+    /**
+     * Iterations 1 and up, moves work.x to the next estimate
+     */
+    abstract void step();
+
+    /**
+     * Clears whatever the solver learnt from the previous start
+     */
+    abstract void restart();
+
+    /**
+     * Adds solver specific state to the event of the iteration just made
+     */
+    void describe(IterationEvent event) {
+    }
+
+    void note(IterationListener.Note note) {
+        if (listener != null) listener.note(iteration, note);
+    }
+
+    void trial(double step, double value, int failed) {
+        metrics.trial();
+        if (listener != null) listener.trial(iteration, step, value, failed);
+    }
+
+    /**
+     * Searches along work.p from work.x, leaving xt = xk + ak*pk for the returned ak.
+     * Returns 0, with xt = xk, if pk is not a descent direction or no acceptable step was found.
+     */
+    double search(double f0, double slope0, double initialStep) {
+        line.step = Double.NaN;
+        double ak = (slope0 < 0) ? lineSearch.search(line, f0, slope0, initialStep) : 0;
+        if (ak != line.step) {
+            work.trial(ak);
+            line.step = Double.NaN;
+        }
+        return ak;
+    }
+
+    /**
+     * f(xt) for the step ak just returned by search, with g(xt) in work.gt. Whatever the
+     * line search already evaluated at xt is reused, and ak = 0 is xk itself.
+     */
+    double evaluateTrial(double ak) {
+        if (ak == 0) {
+            System.arraycopy(work.g, 0, work.gt, 0, work.size);
+            return work.f;
+        }
+        if (line.step != ak) return evaluateWithGradient(work.xt, work.gt);
+        if (!line.hasGradient) {
+            if (gradient == null) return evaluateWithGradient(work.xt, work.gt);
+            evaluateGradient(work.xt, work.gt);
+        }
+        return line.value;
+    }
+
+    /**
+     * phi(a) = f(xk + a*pk) over the workspace, evaluated at xt (and gt) so the last point tried stays there
+     */
+    final class SearchLine implements LineSearch.Line {
+
+        double step, value, slope;      // Last point evaluated
+        boolean hasGradient;            // Whether gt holds g(xt)
+
+        public double value(double step) {
+            work.trial(step);
+            this.step = step;
+            this.value = evaluate(work.xt);
+            this.hasGradient = false;
+            return value;
+        }
+
+        public double valueAndSlope(double step) {
+            work.trial(step);
+            this.step = step;
+            this.value = evaluateWithGradient(work.xt, work.gt);
+            this.slope = dot(work.gt, work.p);
+            this.hasGradient = true;
+            return value;
+        }
+
+        public double slope() {
+            return slope;
+        }
+
+        public double minStep() {
+            // Below this no coordinate moves by more than one ulp of max(1, |xk|)
+            double[] x = work.x, p = work.p;
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < p.length; i++) {
+                if (p[i] != 0) min = Math.min(min, Math.ulp(Math.max(1, Math.abs(x[i]))) / Math.abs(p[i]));
+            }
+            return min;
+        }
+
+        public void trial(double step, double value, int failed) {
+            AbstractOptimizer.this.trial(step, value, failed);
+        }
+
+    }
+
+    // Counted evaluations, the solvers evaluate only through these
+
+    double evaluate(double[] x) {
+        metrics.functionEvaluations++;
+        return func.value(x);
+    }
+
+    double evaluateWithGradient(double[] x, double[] gradOut) {
+        metrics.functionEvaluations++;
+        metrics.gradientEvaluations++;
+        if (gradient == null) return func.valueAndGradient(x, gradOut);
+        gradient.value(x, gradOut);
+        return func.value(x);
+    }
+
+    void evaluateGradient(double[] x, double[] out) {
+        metrics.gradientEvaluations++;
+        gradient.value(x, out);
+    }
+
+    void evaluateHessian(SparseHessian hessian, double[] x, DenseMatrix out) {
+        metrics.hessianEvaluations++;
+        hessian.value(x, out);
+    }
+
+    static double dot(double[] a, double[] b) {
+        return Kernels.get().dot(a, b);
+    }
+
+    static double norm2(double[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+}
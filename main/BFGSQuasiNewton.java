@@ -1,169 +1,167 @@
 package main;
 
 import calc.NFunction;
-import calc.NFunctionMatrix;
 import calc.NFunctionVector;
-import generic.Matrix;
-import generic.Scalar;
-import generic.Value;
+import generic.CholeskyDecomposition;
+import generic.DenseMatrix;
 import generic.Vector;
 
-public class BFGSQuasiNewton {
+public class BFGSQuasiNewton extends AbstractOptimizer {
 
-    int iteration;
-    NFunction func;
+    // Bk approximates the Hessian, or in the inverse form Hk approximates its inverse. Updated in place.
+    final boolean inverseForm;
+    final DenseMatrix Bk, Hk;
+    final CholeskyDecomposition factor;
+    final double[] sk, yk, tmp;
 
-    Vector<Scalar> xk;
-    Matrix<Scalar> Bk;
-
-    NFunctionVector gradFunc;
+    public BFGSQuasiNewton(NFunction func, Vector initial) {
+        this(func, initial, false);
+    }
 
-    boolean done;
+    /**
+     * @param inverseForm maintain the inverse Hessian approximation Hk instead of Bk, so each
+     *                    iteration costs one mat-vec and one rank-two update, O(n^2), instead of
+     *                    a factorization and a matrix product, O(n^3)
+     */
+    public BFGSQuasiNewton(NFunction func, Vector initial, boolean inverseForm) {
+        this(func, func.gradient(initial.getSize()), initial, inverseForm);
+    }
 
-    public BFGSQuasiNewton(NFunction func, Vector initial) {
-        this.func = func;
-        this.xk = initial;
-        this.Bk = Matrix.identity(initial.getSize());
-        this.gradFunc = func.gradient(initial.getSize());
-        this.iteration = 0;
-        this.done = false;
+    /**
+     * Reuses an already derived gradient, e.g. one shared between many solvers
+     */
+    public BFGSQuasiNewton(NFunction func, NFunctionVector gradFunc, Vector initial, boolean inverseForm) {
+        super(func, gradFunc, initial, LineSearch.strongWolfe(0.9));
+        int n = work.size;
+        this.inverseForm = inverseForm;
+        if (inverseForm) {
+            this.Hk = DenseMatrix.identity(n);
+            this.Bk = null;
+            this.factor = null;
+        } else {
+            this.Bk = DenseMatrix.identity(n);
+            this.Hk = null;
+            this.factor = new CholeskyDecomposition(n);
+        }
+        this.sk = new double[n];
+        this.yk = new double[n];
+        this.tmp = new double[n];
     }
 
-    private final double SMALL    = Double.MIN_VALUE;
-    private final double TAU      = 0.5;        // Reduction in step size for each attempt
     private final double EPSILON  = 0.0000001;  // Ending Epsilon
-    private final double WOLFE_C1 = 0.0001;     // Sufficient reduction in f(x)
-    private final double WOLFE_C2 = 0.9;        // c1 <= c2 <= 1. Sufficient reduction in g(x)
-    private final double BETA    = 0.0001;      // Backup line search Beta
+    private static final double CURVATURE = 1e-8;  // Smallest ykT*sk relative to |yk|*|sk| that is used
 
-    public boolean isDone() {
-        return done;
+    void restart() {
+        if (inverseForm) Hk.setIdentity();
+        else Bk.setIdentity();
     }
 
-    public int getIteration() {
-        return iteration;
+    void describe(IterationEvent event) {
+        event.matrix = inverseForm ? Hk : Bk;
+        event.inverse = inverseForm;
     }
 
-    public Vector<Scalar> iterate() {
-        if (done) {
-            System.out.println("=== Done ===");
-            return xk;
+    void step() {
+        long t = System.nanoTime();
+        double[] xk = work.x, gk = work.g, pk = work.p, xt = work.xt, gt = work.gt;
+        double value = work.f;
+
+        if (inverseForm) {
+            // Calculate the Search Direction = -Hk*g(xk)
+            Hk.multiply(gk, pk);
+            for (int i = 0; i < pk.length; i++) pk[i] = -pk[i];
+        } else {
+            // Calculate the Search Direction, solve Bk*pk = -g(xk)
+            for (int i = 0; i < pk.length; i++) pk[i] = -gk[i];
+            factor.factorModified(Bk);
+            factor.solve(pk, pk);
         }
 
-        System.out.println("=== Begin Iteration "+iteration+" ===");
-        Scalar value = func.value(xk);
-        if (iteration == 0) {
-            System.out.println("x"+iteration+" = "+xk);
-            System.out.println("f(x"+iteration+") = "+value);
-            System.out.println("B"+iteration+" = \n"+Bk);
-            iteration++;
-            return xk;
-        }
+        t = metrics.direction(t);
 
-        // Calculate the Search Direction = -(Bk^-1)*g(xk)
-        Vector<Scalar> gk = gradFunc.value(xk);
-        Vector<Scalar> pk = Bk.reciprocal().multiply(gk.negate()).getCol(0).toScalars();
-        System.out.println("p"+iteration+" = "+pk);
-
-        // Wolfe condition 1 (Armijo)
-        Scalar pkT_gk = pk.transpose().multiply(gk.toValues()).toScalars().get(0, 0); // (pk_T)*gk
-        Scalar armijoCoef = new Scalar(WOLFE_C1).multiply(pkT_gk); // c1*(pk_T)*gk
-
-        // Wolfe condition 2
-        double c2_pkT_gk = new Scalar(WOLFE_C2).multiply(pkT_gk).value();
-
-        // Calculate step length
-        double tryStep;
-        System.out.print("failed condition: ");
-        for (tryStep = 1.0; tryStep >= SMALL; tryStep *= TAU) {
-            Scalar ak = new Scalar(tryStep);
-            Vector<Scalar> xt = xk.add(pk.multiply(ak)).toScalars();   // xt = xk + ak*pk
-
-            // Wolfe condition 1
-            double ft = func.value(xt).value();
-            double armijo = value.add(armijoCoef.multiply(ak)).value();  // f(xk) + c1*ak*(pk_T)*gk
-            if (ft-0.000001 > armijo) {
-                System.out.print("1");
-                continue; // Armijo condition: f(xk+ak*pk) <= f(xk) + c1*ak*pk*(gk_T)
-            }
-
-            // Wolfe condition 2
-            double pk_gt = pk.multiply(gradFunc.value(xt).transpose().toValues()).toScalars().get(0, 0).value();
-            if (pk_gt+0.000001 < c2_pkT_gk) {
-                System.out.print("2");
-                continue; // Wolfe condition 2, sufficient improvement in slope
-            }
-
-            break; // Both conditions met
-        }
-        System.out.println();
-        if (tryStep <= SMALL) {
+        // Calculate step length, strong Wolfe conditions aim for ykT*sk > 0 but a search that gives up early may not
+        double ak = search(value, dot(gk, pk), 1.0);
+        if (ak == 0) {
             // Calculate the Search Direction = -gradFunc(f)
-            pk = gk.negate().toScalars();
-            System.out.println("Using line search");
-            System.out.println("p"+iteration+" = "+pk);
-
-            // We are using the Armijo condition along with a backtracking search
-            Scalar gkT_pk = gk.transpose().multiply(pk.toValues()).toScalars().get(0, 0);
-            armijoCoef = gkT_pk.multiply(new Scalar(BETA));
-
-            // Calculate step length
-            for (tryStep = 1.0; tryStep >= SMALL; tryStep *= TAU) {
-                Scalar ak = new Scalar(tryStep);
-                Vector<Scalar> tryX = xk.add(pk.multiply(ak)).toScalars();   // xk + ak*pk
-                double tryValue = func.value(tryX).value();               // f(xk + ak*pk)
-                double armijo = value.add(armijoCoef.multiply(ak)).value();  // f(xk) + ak*BETA*transpose(gk)*pk
-                if (tryValue <= armijo) break; // Armijo condition: f(xk+ak*pk) <= f(xk) + ak*BETA*transpose(gk)*pk
-            }
+            for (int i = 0; i < pk.length; i++) pk[i] = -gk[i];
+            note(IterationListener.Note.FALLBACK_LINE_SEARCH);
+            ak = search(value, dot(gk, pk), 1.0);
         }
 
-        Scalar ak = new Scalar(tryStep);
-        System.out.println("a"+iteration+" = "+ak);
-
-        // Update the pos
-        Vector<Scalar> xk1 = xk.add(pk.multiply(ak)).toScalars();
-        System.out.println("x"+iteration+" = "+xk1);
-        System.out.println("f(x"+iteration+") = "+func.value(xk1));
-
-        // Update Bk
-        Vector<Scalar> gk1 = gradFunc.value(xk1);
-        Vector<Scalar> sk = xk.negate().add(xk1.toValues()).toScalars();
-        Vector<Scalar> yk = gk.negate().add(gk1.toValues()).toScalars();
-
-        // Update term 1
-        Vector<Scalar> Bk_sk = Bk.multiply(sk.toValues()).toScalars().asVector();
-        Matrix<Scalar> Bk_sk_skT = Bk_sk.multiply(sk.transpose().toValues()).toScalars();
-        Scalar skT_Bk_sk = sk.transpose().toValues().multiply(Bk_sk.toValues()).toScalars().get(0, 0);
-        Matrix<Scalar> term1 = Bk_sk_skT.multiply(Bk.toValues()).multiply(skT_Bk_sk.reciprocal()).negate().toScalars();
+        double f_xk1 = evaluateTrial(ak);
+        t = metrics.lineSearch(t);
 
-        // Update term 2
-        Matrix<Scalar> yk_ykT = yk.multiply(yk.transpose().toValues()).toScalars();
-        Scalar ykT_sk = yk.transpose().multiply(sk.toValues()).toScalars().get(0, 0);
-        Matrix<Scalar> term2 = yk_ykT.multiply(ykT_sk.reciprocal()).toScalars();
+        // Update Bk, or Hk in the inverse form
+        for (int i = 0; i < sk.length; i++) {
+            sk[i] = xt[i] - xk[i];
+            yk[i] = gt[i] - gk[i];
+        }
 
-        // Do update
-        Bk = Bk.add(term1.toValues()).add(term2.toValues()).toScalars();
-        System.out.println("B"+iteration+" = \n"+Bk);
+        if (ak == 0) {
+            // Limit of double precision, neither direction goes anywhere
+            note(IterationListener.Note.PRECISION_LIMIT);
+            done = true;
+        } else if (inverseForm) {
+            updateInverse();
+        } else {
+            updateDirect();
+        }
 
         // Done?
-        double norm = ((Scalar) gk1.norm2()).value();
-        double f_xk1 = func.value(xk1).value();
+        double norm = norm2(gt);
         double end = norm / (1 + Math.abs(f_xk1));
         if (end < EPSILON) {
-            System.out.println("Epsilon condition!");
+            note(IterationListener.Note.CONVERGED);
             done = true;
         }
 
-        // Limit of double precision
-        Value delta = sk.norm2();
-        if (((Scalar) delta).value() < SMALL) {
-            System.out.println("Max precision of double arithmetic");
-            done = true;
+        work.accept();
+        work.f = f_xk1;
+        work.gradNorm = norm;
+        work.step = ak;
+        metrics.update(t);
+    }
+
+    /**
+     * Whether ykT*sk is safely positive, otherwise the update would lose positive definiteness
+     */
+    private boolean curvatureHolds(double ykT_sk) {
+        return ykT_sk > CURVATURE * norm2(yk) * norm2(sk);
+    }
+
+    private void updateDirect() {
+        // Bk+1 = Bk - (Bk*sk*skT*Bk)/(skT*Bk*sk) + (yk*ykT)/(ykT*sk)
+        double[] Bk_sk = tmp;
+        Bk.multiply(sk, Bk_sk);
+        double skT_Bk_sk = dot(sk, Bk_sk);
+        double ykT_sk = dot(yk, sk);
+
+        if (curvatureHolds(ykT_sk) && skT_Bk_sk > 0) {
+            Bk.rankOneUpdate(-1.0 / skT_Bk_sk, Bk_sk);
+            Bk.rankOneUpdate(1.0 / ykT_sk, yk);
+        } else {
+            // Skipping the update keeps Bk positive definite
+            note(IterationListener.Note.CURVATURE_FAILED);
         }
+    }
 
-        iteration++;
-        xk = xk1;
-        return xk;
+    private void updateInverse() {
+        double ykT_sk = dot(yk, sk);
+        if (curvatureHolds(ykT_sk)) {
+            // Hk+1 = Hk - rho*(Hk*yk*skT + sk*ykT*Hk) + (rho^2*ykT*Hk*yk + rho)*sk*skT, rho = 1/(ykT*sk)
+            double rho = 1.0 / ykT_sk;
+            double[] Hk_yk = tmp;
+            Hk.multiply(yk, Hk_yk);
+            double ykT_Hk_yk = dot(yk, Hk_yk);
+
+            // Folded into a single symmetric update Hk += sk*vT + v*skT
+            double half = 0.5 * (rho*rho*ykT_Hk_yk + rho);
+            for (int i = 0; i < Hk_yk.length; i++) Hk_yk[i] = half*sk[i] - rho*Hk_yk[i];
+            Hk.rankTwoUpdate(sk, Hk_yk);
+        } else {
+            // Skipping the update keeps Hk positive definite
+            note(IterationListener.Note.CURVATURE_FAILED);
+        }
     }
 
 }
@@ -0,0 +1,40 @@
+package main;
+
+/**
+ * Armijo backtracking. Each rejected step is replaced by the minimizer of the quadratic through
+ * phi(0), phi'(0) and phi(a), kept within [0.1*a, 0.5*a] so the step shrinks at least as fast as
+ * halving but never collapses on a single bad interpolation.
+ */
+public class BacktrackingLineSearch extends LineSearch {
+
+    private static final double SHRINK_MIN = 0.1;
+    private static final double SHRINK_MAX = 0.5;
+
+    final double c1;
+
+    public BacktrackingLineSearch(double c1) {
+        if (!(c1 > 0 && c1 < 1)) throw new RuntimeException("Sufficient decrease constant must be in (0, 1)");
+        this.c1 = c1;
+    }
+
+    public double search(Line line, double f0, double slope0, double initialStep) {
+        if (!(slope0 < 0)) throw new RuntimeException("Line search needs a descent direction");
+        double minStep = line.minStep();
+        for (double step = initialStep; step > minStep; ) {
+            double value = line.value(step);
+            if (value <= f0 + c1*step*slope0) {
+                line.trial(step, value, 0);
+                return step;
+            }
+            line.trial(step, value, 1);
+
+            // Minimizer of q(a) = f0 + slope0*a + c*a^2 with q(step) = value
+            double next = -slope0*step*step / (2*(value - f0 - slope0*step));
+            if (!(next >= SHRINK_MIN*step)) next = SHRINK_MIN*step;     // Also catches NaN from an infinite value
+            if (next > SHRINK_MAX*step) next = SHRINK_MAX*step;
+            step = next;
+        }
+        return 0;
+    }
+
+}
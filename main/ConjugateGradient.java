@@ -2,129 +2,107 @@ package main;
 
 import calc.NFunction;
 import calc.NFunctionVector;
-import generic.Scalar;
-import generic.Value;
 import generic.Vector;
 
-public class ConjugateGradient {
+import java.util.Arrays;
 
-    int iteration;
-    NFunction func;
-    Vector<Scalar> lastDx;
-    Vector<Scalar> lastSn;
-    Vector<Scalar> xk;
-    NFunctionVector gradFunc;
-    boolean done;
+public class ConjugateGradient extends AbstractOptimizer {
+
+    final double[] lastDx;
+    final double[] lastSn;
     boolean wasReset;
+    double beta;
+    double lastSlope;       // gkT*sn of the previous iteration
 
     public ConjugateGradient(NFunction func, Vector initial) {
-        this.func = func;
-        this.gradFunc = func.gradient(initial.getSize());
-        this.lastDx = this.lastSn = initial.multiply(new Scalar(0));
-        this.xk = initial;
-        this.iteration = 0;
-        this.done = false;
+        this(func, func.gradient(initial.getSize()), initial);
+    }
+
+    /**
+     * Reuses an already derived gradient, e.g. one shared between many solvers
+     */
+    public ConjugateGradient(NFunction func, NFunctionVector gradFunc, Vector initial) {
+        super(func, gradFunc, initial, LineSearch.strongWolfe(0.1));
+        this.lastDx = new double[work.size];
+        this.lastSn = new double[work.size];
         this.wasReset = true;
     }
 
-    private final double SMALL   = Double.MIN_VALUE;
-    private final double TAU     = 0.5;             // Reduction in step size for each attempt
-    private final double BETA    = 0.0001;          // Sufficient reduction in f(x)
     private final double EPSILON = 0.0000001;       // Ending Epsilon
 
-    public boolean isDone() {
-        return done;
+    void restart() {
+        Arrays.fill(lastDx, 0);
+        Arrays.fill(lastSn, 0);
+        wasReset = true;
     }
 
-    public int getIteration() {
-        return iteration;
+    void describe(IterationEvent event) {
+        event.beta = beta;
     }
 
-    public Vector<Scalar> iterate() {
-        if (done) {
-            System.out.println("=== Done ===");
-            return xk;
-        }
-
-        System.out.println("=== Begin Iteration "+iteration+" ===");
-        Scalar value = func.value(xk);
-        if (iteration == 0) {
-            System.out.println("x"+iteration+" = "+ this.xk);
-            System.out.println("f(x"+iteration+") = "+value);
-            iteration++;
-            return this.xk;
-        }
+    void step() {
+        long t = System.nanoTime();
+        double[] xk = work.x, gk = work.g, sn = work.p, xt = work.xt;
 
         // Calculate the Search Direction = -gradFunc(f)
-        Vector<Scalar> gk = gradFunc.value(xk);
-        Vector<Value> dx = gk.negate();
-        System.out.println("dx"+iteration+" = "+dx);
+        double lastDxT_lastDx = dot(lastDx, lastDx);
+        for (int i = 0; i < sn.length; i++) lastDx[i] = -gk[i];
 
-        Vector<Value> sn;
         if (!wasReset) {
             // Calculate Beta n, using Fletcher-Reeves formula
-            Scalar pkT_pk = dx.transpose().multiply(dx).toScalars().get(0, 0);
-            Scalar last_pkT_pk = lastDx.transpose().multiply(lastDx.toValues()).toScalars().get(0, 0);
-            Scalar Bn = (Scalar) pkT_pk.multiply(last_pkT_pk.reciprocal());
-
-            sn = dx.add(lastSn.toValues().multiply(Bn));
-            System.out.println("Bn" + iteration + " = " + Bn);
+            double Bn = dot(lastDx, lastDx) / lastDxT_lastDx;
+            for (int i = 0; i < sn.length; i++) sn[i] = lastDx[i] + Bn*lastSn[i];
+            beta = Bn;
         } else {
-            System.out.println("Reset using gradient search");
-            sn = dx;
-        }
-        System.out.println("sn"+iteration+" = "+sn);
-
-        lastDx = dx.toScalars();
-        lastSn = sn.toScalars();
-
-        // We are using the Armijo condition along with a backtracking search
-        Scalar gkT_sn = gk.transpose().multiply(sn).toScalars().get(0, 0);
-        Scalar armijoCoef = gkT_sn.multiply(new Scalar(BETA));
-
-        // Calculate step length
-        Scalar ak = null;
-        for (double tryStep = 1.0; tryStep >= SMALL; tryStep *= TAU) {
-            ak = new Scalar(tryStep);
-            Vector<Scalar> tryX = xk.add(sn.multiply(ak)).toScalars();   // xk + ak*pk
-            double tryValue = func.value(tryX).value();               // f(xk + ak*pk)
-            double armijo = value.add(armijoCoef.multiply(ak)).value();  // f(xk) + ak*BETA*transpose(gk)*pk
-            if (tryValue <= armijo) break; // Armijo condition: f(xk+ak*pk) <= f(xk) + ak*BETA*transpose(gk)*pk
+            note(IterationListener.Note.GRADIENT_RESTART);
+            beta = Double.NaN;
+            System.arraycopy(lastDx, 0, sn, 0, sn.length);
         }
-        System.out.println("a"+iteration+" = "+ak);
+        System.arraycopy(sn, 0, lastSn, 0, sn.length);
+
+        t = metrics.direction(t);
+
+        // Strong Wolfe with a small c2 keeps the Fletcher-Reeves directions downhill. The first
+        // trial assumes the same first order change in f as the last iteration.
+        double gkT_sn = dot(gk, sn);
+        double initialStep = 1.0;
+        if (!wasReset && work.step > 0) initialStep = Math.min(1.0, work.step * lastSlope / gkT_sn);
+        lastSlope = gkT_sn;
+
+        // Calculate step length, xt = xk + ak*sn
+        double ak = search(work.f, gkT_sn, initialStep);
 
-        // Update the xk
-        Vector<Scalar> xk1 = this.xk.add(sn.multiply(ak)).toScalars();
-        System.out.println("x"+iteration+" = "+ xk1);
-        System.out.println("f(x"+iteration+") = "+func.value(xk1));
+        double fx = evaluateTrial(ak);
+        t = metrics.lineSearch(t);
 
         // Done?
-        gk = gradFunc.value(xk1);
-        double norm = ((Scalar) gk.norm2()).value();
-        double fx = func.value(xk1).value();
+        double norm = norm2(work.gt);
         double end = norm / (1 + Math.abs(fx));
         if (end < EPSILON) {
-            System.out.println("Epsilon condition!");
+            note(IterationListener.Note.CONVERGED);
             done = true;
         }
 
         // Limit of double precision
-        Value delta = xk.negate().add(xk1.toValues()).norm2();
-        if (((Scalar) delta).value() == 0) {
+        boolean moved = false;
+        for (int i = 0; i < xk.length; i++) moved |= xt[i] != xk[i];
+        if (!moved) {
             if (wasReset) {
-                System.out.println("Max precision of double arithmetic");
+                note(IterationListener.Note.PRECISION_LIMIT);
                 done = true;
             } else {
-                System.out.println("No progress made, retrying with gradient search");
+                note(IterationListener.Note.NO_PROGRESS);
                 wasReset = true;
             }
         } else {
             wasReset = false;
         }
 
-        this.xk = xk1;
-        iteration++;
-        return this.xk;
+        work.accept();
+        work.f = fx;
+        work.gradNorm = norm;
+        work.step = ak;
+        metrics.update(t);
     }
 
 }
@@ -0,0 +1,51 @@
+package main;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints each iteration in the solvers' traditional trace format
+ */
+public class ConsoleTrace implements IterationListener {
+
+    final PrintStream out;
+    final StringBuilder failed = new StringBuilder();
+    final List<Note> notes = new ArrayList<>();
+
+    public ConsoleTrace() {
+        this(System.out);
+    }
+
+    public ConsoleTrace(PrintStream out) {
+        this.out = out;
+    }
+
+    public void trial(int iteration, double step, double value, int failed) {
+        if (failed != 0) this.failed.append(failed);
+    }
+
+    public void note(int iteration, Note note) {
+        notes.add(note);
+    }
+
+    public void iteration(IterationEvent event) {
+        int k = event.getIteration();
+        out.println("=== Begin Iteration "+k+" ===");
+        if (k > 0) {
+            out.println("p"+k+" = "+event.getDirection());
+            if (!Double.isNaN(event.getBeta())) out.println("Bn"+k+" = "+event.getBeta());
+            if (failed.length() > 0) out.println("failed condition: "+failed);
+            for (Note note : notes) if (!note.isTerminal()) out.println(note.getMessage());
+            out.println("a"+k+" = "+event.getStep());
+        }
+        out.println("x"+k+" = "+event.getX());
+        out.println("f(x"+k+") = "+event.getValue());
+        if (event.getMatrix() != null) out.println((event.isInverse() ? "H" : "B")+k+" = \n"+event.getMatrix());
+        for (Note note : notes) if (note.isTerminal()) out.println(note.getMessage());
+
+        failed.setLength(0);
+        notes.clear();
+    }
+
+}
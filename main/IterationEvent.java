@@ -0,0 +1,73 @@
+package main;
+
+import generic.DenseMatrix;
+import generic.DenseVector;
+
+/**
+ * State of a solver after one iteration. A solver reuses a single instance for all its events.
+ */
+public class IterationEvent {
+
+    final Optimizer solver;
+    final Workspace work;
+    int iteration;
+    double beta;
+    DenseMatrix matrix;
+    boolean inverse;
+
+    IterationEvent(Optimizer solver, Workspace work) {
+        this.solver = solver;
+        this.work = work;
+    }
+
+    public Optimizer getSolver() {
+        return solver;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    // xk
+    public DenseVector getX() {
+        return work.point;
+    }
+
+    // f(xk)
+    public double getValue() {
+        return work.f;
+    }
+
+    // |g(xk)|, NaN if the solver has not evaluated it
+    public double getGradientNorm() {
+        return work.gradNorm;
+    }
+
+    // Direction searched to reach xk, null for iteration 0
+    public DenseVector getDirection() {
+        return iteration == 0 ? null : work.direction;
+    }
+
+    // Step length ak along the direction, NaN for iteration 0
+    public double getStep() {
+        return iteration == 0 ? Double.NaN : work.step;
+    }
+
+    // Conjugate gradient beta, NaN for the other solvers and for restarts
+    public double getBeta() {
+        return beta;
+    }
+
+    /**
+     * Hessian approximation maintained by quasi-Newton solvers, null otherwise
+     */
+    public DenseMatrix getMatrix() {
+        return matrix;
+    }
+
+    // Whether getMatrix() approximates the inverse Hessian
+    public boolean isInverse() {
+        return inverse;
+    }
+
+}
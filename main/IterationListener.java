@@ -0,0 +1,52 @@
+package main;
+
+/**
+ * Receives the progress of a solver. Events are only valid during the call, the vectors
+ * they hold are views of the solver's workspace.
+ */
+public interface IterationListener {
+
+    /**
+     * Things a solver reports that are not part of every iteration
+     */
+    enum Note {
+        GRADIENT_RESTART("Reset using gradient search"),
+        FALLBACK_LINE_SEARCH("Using line search"),
+        CURVATURE_FAILED("Curvature condition failed, update skipped"),
+        NO_PROGRESS("No progress made, retrying with gradient search"),
+        CONVERGED("Epsilon condition!"),
+        PRECISION_LIMIT("Max precision of double arithmetic");
+
+        final String message;
+
+        Note(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        // Ends the solve, reported after the iteration that triggered it
+        public boolean isTerminal() {
+            return this == CONVERGED || this == PRECISION_LIMIT;
+        }
+    }
+
+    /**
+     * After every iteration including iteration 0, which only reports the start point
+     */
+    void iteration(IterationEvent event);
+
+    /**
+     * A point tried by the line search of the given iteration
+     * @param failed 0 if the step was accepted, otherwise the number of the condition it failed
+     *               (1 sufficient decrease, 2 curvature)
+     */
+    default void trial(int iteration, double step, double value, int failed) {
+    }
+
+    default void note(int iteration, Note note) {
+    }
+
+}
@@ -0,0 +1,140 @@
+package main;
+
+import calc.NFunction;
+import generic.Kernels;
+import generic.Vector;
+
+/**
+ * Limited-memory BFGS. Only the last m (sk, yk) pairs are kept, the search direction
+ * -Hk*gk is rebuilt from them with the two-loop recursion, so memory and time per
+ * iteration are O(m*n) instead of O(n^2).
+ */
+public class LBFGS extends AbstractOptimizer {
+
+    // Ring buffer of the last m pairs, newest is the slot of the most recent pair
+    final int memory;
+    final double[][] s, y;
+    final double[] rho, alpha;
+    int stored, newest;
+
+    public LBFGS(NFunction func, Vector initial) {
+        this(func, initial, 10);
+    }
+
+    public LBFGS(NFunction func, Vector initial, int memory) {
+        super(func, null, initial, LineSearch.strongWolfe(0.9));
+        if (memory < 1) throw new RuntimeException("L-BFGS needs at least one stored pair");
+        int n = work.size;
+        this.memory = memory;
+        this.s = new double[memory][n];
+        this.y = new double[memory][n];
+        this.rho = new double[memory];
+        this.alpha = new double[memory];
+        restart();
+    }
+
+    private final double EPSILON = 0.0000001;       // Ending Epsilon
+
+    void restart() {
+        stored = 0;
+        newest = memory-1;
+    }
+
+    void step() {
+        long t = System.nanoTime();
+        double[] xk = work.x, gk = work.g, pk = work.p, xt = work.xt, gt = work.gt;
+        double fk = work.f;
+
+        // Calculate the Search Direction = -Hk*gk
+        direction();
+        double gkT_pk = dot(gk, pk);
+        if (!(gkT_pk < 0)) {
+            // Not a descent direction, forget the stored pairs and use -gk
+            stored = 0;
+            for (int i = 0; i < pk.length; i++) pk[i] = -gk[i];
+            gkT_pk = -dot(gk, gk);
+            note(IterationListener.Note.GRADIENT_RESTART);
+        }
+
+        t = metrics.direction(t);
+
+        // Calculate step length, xt = xk + ak*pk
+        double ak = search(fk, gkT_pk, 1.0);
+        if (ak == 0 && stored > 0) {
+            // The stored pairs gave a useless direction, forget them and retry with -gk
+            stored = 0;
+            for (int i = 0; i < pk.length; i++) pk[i] = -gk[i];
+            note(IterationListener.Note.GRADIENT_RESTART);
+            ak = search(fk, -dot(gk, gk), 1.0);
+        }
+
+        double ft = evaluateTrial(ak);
+        t = metrics.lineSearch(t);
+
+        // Store the new pair sk = xk+1 - xk, yk = gk+1 - gk in place of the oldest
+        int slot = (newest+1) % memory;
+        double[] sk = s[slot], yk = y[slot];
+        double ykT_sk = 0;
+        for (int i = 0; i < sk.length; i++) {
+            sk[i] = xt[i] - xk[i];
+            yk[i] = gt[i] - gk[i];
+            ykT_sk += yk[i] * sk[i];
+        }
+        if (ak == 0) {
+            // Limit of double precision
+            note(IterationListener.Note.PRECISION_LIMIT);
+            done = true;
+        } else if (ykT_sk > 0) {
+            rho[slot] = 1.0 / ykT_sk;
+            newest = slot;
+            if (stored < memory) stored++;
+        } else {
+            // Curvature condition failed, the stored pairs no longer describe f here
+            note(IterationListener.Note.CURVATURE_FAILED);
+            stored = 0;
+        }
+
+        // Done?
+        double norm = norm2(gt);
+        double end = norm / (1 + Math.abs(ft));
+        if (end < EPSILON) {
+            note(IterationListener.Note.CONVERGED);
+            done = true;
+        }
+
+        work.accept();
+        work.f = ft;
+        work.gradNorm = norm;
+        work.step = ak;
+        metrics.update(t);
+    }
+
+    /**
+     * Two-loop recursion, pk = -Hk*gk with Hk0 = (skT*yk)/(ykT*yk)*I from the newest pair
+     */
+    private void direction() {
+        Kernels kernels = Kernels.get();
+        double[] q = work.p;
+        System.arraycopy(work.g, 0, q, 0, q.length);
+
+        for (int k = 0; k < stored; k++) {
+            int j = (newest - k + memory) % memory;
+            double a = rho[j] * dot(s[j], q);
+            alpha[j] = a;
+            kernels.axpy(-a, y[j], q);
+        }
+
+        double gamma = 1;
+        if (stored > 0) gamma = 1.0 / (rho[newest] * dot(y[newest], y[newest]));
+        kernels.scal(gamma, q);
+
+        for (int k = stored-1; k >= 0; k--) {
+            int j = (newest - k + memory) % memory;
+            double b = rho[j] * dot(y[j], q);
+            kernels.axpy(alpha[j] - b, s[j], q);
+        }
+
+        kernels.scal(-1, q);
+    }
+
+}
@@ -0,0 +1,75 @@
+package main;
+
+/**
+ * Chooses the step length ak along a descent direction. Implementations keep their working
+ * state in fields, so an instance must only be used by one solver at a time.
+ */
+public abstract class LineSearch {
+
+    /**
+     * The objective restricted to the search direction, phi(a) = f(xk + a*pk)
+     */
+    public interface Line {
+
+        double value(double step);
+
+        /**
+         * phi(a), with phi'(a) = g(xk + a*pk)*pk available from slope() afterwards
+         */
+        double valueAndSlope(double step);
+
+        double slope();
+
+        /**
+         * Steps at or below this move xk by no more than rounding error
+         */
+        double minStep();
+
+        /**
+         * Reports the verdict on the point last evaluated
+         * @param failed 0 if accepted, otherwise the condition it failed (1 sufficient decrease, 2 curvature)
+         */
+        void trial(double step, double value, int failed);
+
+    }
+
+    public static final double C1 = 0.0001;     // Sufficient decrease, f(xk+a*pk) <= f(xk) + C1*a*gkT*pk
+
+    /**
+     * @param f0 phi(0) = f(xk)
+     * @param slope0 phi'(0) = gkT*pk, must be negative
+     * @param initialStep first step tried
+     * @return the accepted step, or 0 if no step below initialStep decreases f sufficiently
+     */
+    public abstract double search(Line line, double f0, double slope0, double initialStep);
+
+    /**
+     * Takes the initial step as it is, without evaluating anything. Suits pure Newton steps.
+     */
+    public static LineSearch fullStep() {
+        return FULL_STEP;
+    }
+
+    // Stateless, one instance serves every solver
+    private static final LineSearch FULL_STEP = new LineSearch() {
+        public double search(Line line, double f0, double slope0, double initialStep) {
+            return initialStep;
+        }
+    };
+
+    /**
+     * Sufficient decrease only, backtracking with safeguarded quadratic interpolation
+     */
+    public static LineSearch armijo() {
+        return new BacktrackingLineSearch(C1);
+    }
+
+    /**
+     * Strong Wolfe conditions with the given curvature constant, 0.9 suits Newton-like
+     * directions and 0.1 conjugate gradients
+     */
+    public static LineSearch strongWolfe(double c2) {
+        return new MoreThuenteLineSearch(C1, c2);
+    }
+
+}
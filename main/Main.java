@@ -1,9 +1,12 @@
 package main;
 
 import calc.NPolynomial;
+import generic.DenseVector;
 import generic.Scalar;
 import generic.Vector;
 
+import java.util.Arrays;
+
 public class Main {
 	
 	public static void main(String[] args) {
@@ -39,10 +42,12 @@ public class Main {
         //NewtonMethod solve = new NewtonMethod(func, x);
         //BFGSQuasiNewton solve = new BFGSQuasiNewton(func, x);
         //ConjugateGradient solve = new ConjugateGradient(func, x);
+        // Per-iteration trace only when asked for with --trace
+        if (Arrays.asList(args).contains("--trace")) solve.setListener(new ConsoleTrace());
 
         long nanos = System.nanoTime();
         while (!solve.isDone()) {
-            Vector<Scalar> xk = solve.iterate();
+            DenseVector xk = solve.iterate();
             System.out.println(xk);
         }
 		long time = System.nanoTime() - nanos;
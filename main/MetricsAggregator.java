@@ -0,0 +1,147 @@
+package main;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe running totals of solver metrics. Solvers count privately and are added here once
+ * per solve, so concurrent solvers only contend on the striped adders at the end of each solve.
+ */
+public class MetricsAggregator implements SolverMetricsMXBean {
+
+    final LongAdder solves = new LongAdder();
+    final LongAdder converged = new LongAdder();
+    final LongAdder iterations = new LongAdder();
+    final LongAdder functionEvaluations = new LongAdder();
+    final LongAdder gradientEvaluations = new LongAdder();
+    final LongAdder hessianEvaluations = new LongAdder();
+    final LongAdder lineSearchTrials = new LongAdder();
+    final LongAccumulator maxTrials = new LongAccumulator(Math::max, 0);
+    final LongAdder directionNanos = new LongAdder();
+    final LongAdder lineSearchNanos = new LongAdder();
+    final LongAdder updateNanos = new LongAdder();
+
+    ObjectName name;
+
+    public void add(MetricsSnapshot metrics) {
+        solves.add(metrics.solves);
+        converged.add(metrics.converged);
+        iterations.add(metrics.iterations);
+        functionEvaluations.add(metrics.functionEvaluations);
+        gradientEvaluations.add(metrics.gradientEvaluations);
+        hessianEvaluations.add(metrics.hessianEvaluations);
+        lineSearchTrials.add(metrics.lineSearchTrials);
+        maxTrials.accumulate(metrics.maxTrials);
+        directionNanos.add(metrics.directionNanos);
+        lineSearchNanos.add(metrics.lineSearchNanos);
+        updateNanos.add(metrics.updateNanos);
+    }
+
+    public void add(Optimizer solver) {
+        add(solver.getMetrics());
+    }
+
+    /**
+     * Totals so far, each counter is read atomically but not all of them at the same instant
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(solves.sum(), converged.sum(), iterations.sum(),
+                functionEvaluations.sum(), gradientEvaluations.sum(), hessianEvaluations.sum(),
+                lineSearchTrials.sum(), maxTrials.get(),
+                directionNanos.sum(), lineSearchNanos.sum(), updateNanos.sum());
+    }
+
+    public void reset() {
+        solves.reset();
+        converged.reset();
+        iterations.reset();
+        functionEvaluations.reset();
+        gradientEvaluations.reset();
+        hessianEvaluations.reset();
+        lineSearchTrials.reset();
+        maxTrials.reset();
+        directionNanos.reset();
+        lineSearchNanos.reset();
+        updateNanos.reset();
+    }
+
+    /**
+     * Publishes these totals on the platform MBean server as main:type=SolverMetrics,name=&lt;name&gt;
+     */
+    public synchronized void register(String name) {
+        if (this.name != null) throw new RuntimeException("Metrics already registered as "+this.name);
+        try {
+            ObjectName objectName = new ObjectName("main:type=SolverMetrics,name="+ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Can't register solver metrics "+name, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new RuntimeException("Can't unregister solver metrics "+name, e);
+        }
+        name = null;
+    }
+
+    public long getSolves() {
+        return solves.sum();
+    }
+
+    public long getConverged() {
+        return converged.sum();
+    }
+
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    public long getFunctionEvaluations() {
+        return functionEvaluations.sum();
+    }
+
+    public long getGradientEvaluations() {
+        return gradientEvaluations.sum();
+    }
+
+    public long getHessianEvaluations() {
+        return hessianEvaluations.sum();
+    }
+
+    public long getLineSearchTrials() {
+        return lineSearchTrials.sum();
+    }
+
+    public long getMaxTrialsPerIteration() {
+        return maxTrials.get();
+    }
+
+    public double getMeanTrialsPerIteration() {
+        return snapshot().getMeanTrialsPerIteration();
+    }
+
+    public double getDirectionMillis() {
+        return directionNanos.sum() / 1000000.0;
+    }
+
+    public double getLineSearchMillis() {
+        return lineSearchNanos.sum() / 1000000.0;
+    }
+
+    public double getUpdateMillis() {
+        return updateNanos.sum() / 1000000.0;
+    }
+
+    public String toString() {
+        return snapshot().toString();
+    }
+
+}
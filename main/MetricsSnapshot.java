@@ -0,0 +1,99 @@
+package main;
+
+/**
+ * Immutable copy of solver counters, of a single solve or summed over many
+ */
+public final class MetricsSnapshot {
+
+    final long solves, converged, iterations;
+    final long functionEvaluations, gradientEvaluations, hessianEvaluations;
+    final long lineSearchTrials, maxTrials;
+    final long directionNanos, lineSearchNanos, updateNanos;
+
+    MetricsSnapshot(long solves, long converged, long iterations,
+                    long functionEvaluations, long gradientEvaluations, long hessianEvaluations,
+                    long lineSearchTrials, long maxTrials,
+                    long directionNanos, long lineSearchNanos, long updateNanos) {
+        this.solves = solves;
+        this.converged = converged;
+        this.iterations = iterations;
+        this.functionEvaluations = functionEvaluations;
+        this.gradientEvaluations = gradientEvaluations;
+        this.hessianEvaluations = hessianEvaluations;
+        this.lineSearchTrials = lineSearchTrials;
+        this.maxTrials = maxTrials;
+        this.directionNanos = directionNanos;
+        this.lineSearchNanos = lineSearchNanos;
+        this.updateNanos = updateNanos;
+    }
+
+    public MetricsSnapshot plus(MetricsSnapshot other) {
+        return new MetricsSnapshot(solves + other.solves, converged + other.converged, iterations + other.iterations,
+                functionEvaluations + other.functionEvaluations,
+                gradientEvaluations + other.gradientEvaluations,
+                hessianEvaluations + other.hessianEvaluations,
+                lineSearchTrials + other.lineSearchTrials, Math.max(maxTrials, other.maxTrials),
+                directionNanos + other.directionNanos,
+                lineSearchNanos + other.lineSearchNanos,
+                updateNanos + other.updateNanos);
+    }
+
+    public long getSolves() {
+        return solves;
+    }
+
+    // Solves that met their own convergence criteria
+    public long getConverged() {
+        return converged;
+    }
+
+    public long getIterations() {
+        return iterations;
+    }
+
+    public long getFunctionEvaluations() {
+        return functionEvaluations;
+    }
+
+    public long getGradientEvaluations() {
+        return gradientEvaluations;
+    }
+
+    public long getHessianEvaluations() {
+        return hessianEvaluations;
+    }
+
+    public long getLineSearchTrials() {
+        return lineSearchTrials;
+    }
+
+    public long getMaxTrialsPerIteration() {
+        return maxTrials;
+    }
+
+    public double getMeanTrialsPerIteration() {
+        return iterations == 0 ? 0 : (double) lineSearchTrials / iterations;
+    }
+
+    public long getDirectionNanos() {
+        return directionNanos;
+    }
+
+    public long getLineSearchNanos() {
+        return lineSearchNanos;
+    }
+
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    public String toString() {
+        return "solves = "+solves+" ("+converged+" converged), iterations = "+iterations
+                +", f = "+functionEvaluations+", g = "+gradientEvaluations+", H = "+hessianEvaluations
+                +", trials = "+lineSearchTrials+" (max "+maxTrials+" per iteration)"
+                +", direction = "+(directionNanos / 1000000.0)+" ms"
+                +", line search = "+(lineSearchNanos / 1000000.0)+" ms"
+                +", update = "+(updateNanos / 1000000.0)+" ms";
+    }
+
+}
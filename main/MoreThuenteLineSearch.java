@@ -0,0 +1,192 @@
+package main;
+
+/**
+ * Line search for the strong Wolfe conditions
+ *   f(xk+a*pk) <= f(xk) + c1*a*gkT*pk   and   |g(xk+a*pk)T*pk| <= c2*|gkT*pk|
+ * after More &amp; Thuente, "Line search algorithms with guaranteed sufficient decrease" (1994),
+ * as in MINPACK-2 dcsrch/dcstep. The step is extrapolated until an interval containing acceptable
+ * steps is bracketed, which is then shrunk by safeguarded cubic and quadratic interpolation.
+ */
+public class MoreThuenteLineSearch extends LineSearch {
+
+    private static final double XTOL     = 1e-10;   // Relative width of the bracket at which to give up
+    private static final double EXTRAP_L = 1.1;     // Extrapolation bounds before bracketing
+    private static final double EXTRAP_U = 4.0;
+    private static final double STEP_MAX = 1e10;
+    private static final int MAX_EVALUATIONS = 20;
+
+    final double c1, c2;
+
+    // Best step so far (x) and the other end of the interval (y), with their auxiliary values and slopes
+    private double stx, fx, gx, sty, fy, gy;
+    private boolean bracketed;
+
+    public MoreThuenteLineSearch(double c1, double c2) {
+        if (!(c1 > 0 && c1 < c2 && c2 < 1)) throw new RuntimeException("Wolfe constants must satisfy 0 < c1 < c2 < 1");
+        this.c1 = c1;
+        this.c2 = c2;
+    }
+
+    public double search(Line line, double f0, double slope0, double initialStep) {
+        if (!(slope0 < 0)) throw new RuntimeException("Line search needs a descent direction");
+        double stepMin = line.minStep();
+        double stp = Math.min(Math.max(initialStep, stepMin), STEP_MAX);
+
+        boolean stage1 = true;
+        double gtest = c1*slope0;
+        double width = STEP_MAX - stepMin, width1 = 2*width;
+        bracketed = false;
+        stx = 0; fx = f0; gx = slope0;
+        sty = 0; fy = f0; gy = slope0;
+        double stmin = 0, stmax = stp + EXTRAP_U*stp;
+
+        for (int evaluation = 1; ; evaluation++) {
+            double f = line.valueAndSlope(stp);
+            double g = line.slope();
+            double ftest = f0 + stp*gtest;
+
+            if (stage1 && f <= ftest && g >= 0) stage1 = false;
+
+            // Strong Wolfe conditions met
+            if (f <= ftest && Math.abs(g) <= -c2*slope0) {
+                line.trial(stp, f, 0);
+                return stp;
+            }
+            line.trial(stp, f, f > ftest ? 1 : 2);
+
+            // Nothing better can be found, fall back on the lowest sufficient decrease seen,
+            // stx is the best step before this trial
+            if (evaluation >= MAX_EVALUATIONS
+                    || (bracketed && (stp <= stmin || stp >= stmax))
+                    || (bracketed && stmax - stmin <= XTOL*stmax)
+                    || (stp == STEP_MAX && f <= ftest && g <= gtest)
+                    || (stp == stepMin && (f > ftest || g >= gtest))) {
+                boolean best = stx > stepMin && fx <= f0 + stx*gtest;
+                if (f <= ftest && (!best || f <= fx)) return stp;
+                return best ? stx : 0;
+            }
+
+            // In the first stage a modified function with the sufficient decrease line subtracted is used
+            if (stage1 && f <= fx && f > ftest) {
+                fx -= stx*gtest; fy -= sty*gtest;
+                gx -= gtest; gy -= gtest;
+                stp = step(stp, f - stp*gtest, g - gtest, stmin, stmax);
+                fx += stx*gtest; fy += sty*gtest;
+                gx += gtest; gy += gtest;
+            } else {
+                stp = step(stp, f, g, stmin, stmax);
+            }
+
+            // Force sufficient shrinking of the bracket
+            if (bracketed) {
+                if (Math.abs(sty - stx) >= 0.66*width1) stp = stx + 0.5*(sty - stx);
+                width1 = width;
+                width = Math.abs(sty - stx);
+            }
+
+            if (bracketed) {
+                stmin = Math.min(stx, sty);
+                stmax = Math.max(stx, sty);
+            } else {
+                stmin = stp + EXTRAP_L*(stp - stx);
+                stmax = stp + EXTRAP_U*(stp - stx);
+            }
+
+            stp = Math.min(Math.max(stp, stepMin), STEP_MAX);
+
+            // With rounding errors stopping the progress, settle for the best step
+            if (bracketed && (stp <= stmin || stp >= stmax || stmax - stmin <= XTOL*stmax)) stp = stx;
+        }
+    }
+
+    /**
+     * dcstep: from the trial step stp with value fp and slope dp, updates the interval
+     * [stx, sty] and returns the next trial step, kept within [stmin, stmax]
+     */
+    private double step(double stp, double fp, double dp, double stmin, double stmax) {
+        double sgnd = dp * Math.signum(gx);
+        double stpf;
+
+        if (fp > fx) {
+            // Higher value, the minimum is bracketed. Cubic step if closer to stx, else average with the quadratic
+            double theta = 3*(fx - fp)/(stp - stx) + gx + dp;
+            double s = max(theta, gx, dp);
+            double gamma = s*Math.sqrt((theta/s)*(theta/s) - (gx/s)*(dp/s));
+            if (stp < stx) gamma = -gamma;
+            double p = (gamma - gx) + theta;
+            double q = ((gamma - gx) + gamma) + dp;
+            double stpc = stx + (p/q)*(stp - stx);
+            double stpq = stx + ((gx/((fx - fp)/(stp - stx) + gx))/2)*(stp - stx);
+            if (Math.abs(stpc - stx) < Math.abs(stpq - stx)) stpf = stpc;
+            else stpf = stpc + (stpq - stpc)/2;
+            bracketed = true;
+        } else if (sgnd < 0) {
+            // Slopes of opposite sign, the minimum is bracketed. Take the step farther from stp
+            double theta = 3*(fx - fp)/(stp - stx) + gx + dp;
+            double s = max(theta, gx, dp);
+            double gamma = s*Math.sqrt((theta/s)*(theta/s) - (gx/s)*(dp/s));
+            if (stp > stx) gamma = -gamma;
+            double p = (gamma - dp) + theta;
+            double q = ((gamma - dp) + gamma) + gx;
+            double stpc = stp + (p/q)*(stx - stp);
+            double stpq = stp + (dp/(dp - gx))*(stx - stp);
+            if (Math.abs(stpc - stp) > Math.abs(stpq - stp)) stpf = stpc;
+            else stpf = stpq;
+            bracketed = true;
+        } else if (Math.abs(dp) < Math.abs(gx)) {
+            // Same sign, slope decreasing in magnitude. The cubic is only used if it has a minimum beyond stp
+            double theta = 3*(fx - fp)/(stp - stx) + gx + dp;
+            double s = max(theta, gx, dp);
+            double gamma = s*Math.sqrt(Math.max(0, (theta/s)*(theta/s) - (gx/s)*(dp/s)));
+            if (stp > stx) gamma = -gamma;
+            double p = (gamma - dp) + theta;
+            double q = (gamma + (gx - dp)) + gamma;
+            double r = p/q;
+            double stpc;
+            if (r < 0 && gamma != 0) stpc = stp + r*(stx - stp);
+            else if (stp > stx) stpc = stmax;
+            else stpc = stmin;
+            double stpq = stp + (dp/(dp - gx))*(stx - stp);
+
+            if (bracketed) {
+                stpf = (Math.abs(stpc - stp) < Math.abs(stpq - stp)) ? stpc : stpq;
+                if (stp > stx) stpf = Math.min(stp + 0.66*(sty - stp), stpf);
+                else stpf = Math.max(stp + 0.66*(sty - stp), stpf);
+            } else {
+                stpf = (Math.abs(stpc - stp) > Math.abs(stpq - stp)) ? stpc : stpq;
+                stpf = Math.max(stmin, Math.min(stmax, stpf));
+            }
+        } else {
+            // Same sign, slope not decreasing. Cubic through stp and sty if bracketed, else go to the bound
+            if (bracketed) {
+                double theta = 3*(fp - fy)/(sty - stp) + gy + dp;
+                double s = max(theta, gy, dp);
+                double gamma = s*Math.sqrt((theta/s)*(theta/s) - (gy/s)*(dp/s));
+                if (stp > sty) gamma = -gamma;
+                double p = (gamma - dp) + theta;
+                double q = ((gamma - dp) + gamma) + gy;
+                stpf = stp + (p/q)*(sty - stp);
+            } else if (stp > stx) {
+                stpf = stmax;
+            } else {
+                stpf = stmin;
+            }
+        }
+
+        // Update the interval that contains a minimizer
+        if (fp > fx) {
+            sty = stp; fy = fp; gy = dp;
+        } else {
+            if (sgnd < 0) {
+                sty = stx; fy = fx; gy = gx;
+            }
+            stx = stp; fx = fp; gx = dp;
+        }
+        return stpf;
+    }
+
+    private static double max(double a, double b, double c) {
+        return Math.max(Math.abs(a), Math.max(Math.abs(b), Math.abs(c)));
+    }
+
+}
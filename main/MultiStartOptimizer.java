@@ -0,0 +1,331 @@
+package main;
+
+import calc.NFunction;
+import calc.NFunctionVector;
+import calc.SparseHessian;
+import generic.DenseVector;
+import generic.Scalar;
+import generic.Vector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs one independent solver per start point on a fork-join pool and keeps the lowest f(x) found.
+ * Derivatives are taken once by the SolverFactory and shared by every solver, once any run reaches
+ * the target value the remaining runs stop at their next iteration.
+ */
+public class MultiStartOptimizer {
+
+    public interface SolverFactory {
+        Optimizer create(Vector<Scalar> start);
+    }
+
+    public static SolverFactory steepestDescent(NFunction func, int size) {
+        NFunctionVector gradient = func.gradient(size);
+        return start -> new SteepestDescent(func, gradient, start);
+    }
+
+    public static SolverFactory conjugateGradient(NFunction func, int size) {
+        NFunctionVector gradient = func.gradient(size);
+        return start -> new ConjugateGradient(func, gradient, start);
+    }
+
+    public static SolverFactory newton(NFunction func, int size) {
+        NFunctionVector gradient = func.gradient(size);
+        SparseHessian hessian = func.sparseHessian(size);
+        return start -> new NewtonMethod(func, gradient, hessian, start);
+    }
+
+    public static SolverFactory bfgs(NFunction func, int size, boolean inverseForm) {
+        NFunctionVector gradient = func.gradient(size);
+        return start -> new BFGSQuasiNewton(func, gradient, start, inverseForm);
+    }
+
+    // L-BFGS works from valueAndGradient, there is nothing to derive up front
+    public static SolverFactory lbfgs(NFunction func, int memory) {
+        return start -> new LBFGS(func, start, memory);
+    }
+
+    /**
+     * count points drawn uniformly from the box [lower, upper]
+     */
+    public static double[][] randomStarts(int count, double[] lower, double[] upper, long seed) {
+        checkBox(lower, upper);
+        Random random = new Random(seed);
+        double[][] starts = new double[count][lower.length];
+        for (double[] start : starts) {
+            for (int i = 0; i < start.length; i++) {
+                start[i] = lower[i] + random.nextDouble() * (upper[i] - lower[i]);
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * count points from the box [lower, upper] such that, along every axis, each of the count equal
+     * slices holds exactly one point
+     */
+    public static double[][] latinHypercube(int count, double[] lower, double[] upper, long seed) {
+        checkBox(lower, upper);
+        Random random = new Random(seed);
+        double[][] starts = new double[count][lower.length];
+        int[] slice = new int[count];
+        for (int i = 0; i < lower.length; i++) {
+            for (int p = 0; p < count; p++) slice[p] = p;
+            // Fisher-Yates shuffle, a fresh permutation of the slices per axis
+            for (int p = count-1; p > 0; p--) {
+                int q = random.nextInt(p+1);
+                int swap = slice[p]; slice[p] = slice[q]; slice[q] = swap;
+            }
+            double width = (upper[i] - lower[i]) / count;
+            for (int p = 0; p < count; p++) {
+                starts[p][i] = lower[i] + (slice[p] + random.nextDouble()) * width;
+            }
+        }
+        return starts;
+    }
+
+    private static void checkBox(double[] lower, double[] upper) {
+        if (lower.length != upper.length) throw new RuntimeException("Start box bounds have different dimensions");
+        for (int i = 0; i < lower.length; i++) {
+            if (!(lower[i] <= upper[i])) throw new RuntimeException("Start box lower bound above upper bound for x["+(i+1)+"]");
+        }
+    }
+
+    public enum Status {
+        CONVERGED,          // Solver stopped on its own criteria
+        TARGET_REACHED,     // f(x) <= target, this run cancelled the others
+        MAX_ITERATIONS,
+        CANCELLED,          // Another run reached the target first
+        FAILED              // Solver threw, e.g. a singular system
+    }
+
+    /**
+     * Outcome of the run from one start point
+     */
+    public static class Run {
+
+        final double[] start;
+        double[] x;
+        double value = Double.NaN;
+        int iterations;
+        long nanos;
+        Status status;
+        RuntimeException error;
+        MetricsSnapshot metrics;
+
+        Run(double[] start) {
+            this.start = start;
+            this.x = start;
+        }
+
+        public double[] getStart() {
+            return start.clone();
+        }
+
+        public double[] getX() {
+            return x.clone();
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public RuntimeException getError() {
+            return error;
+        }
+
+        // Evaluation counts and timings of this start's solver, null if it could not be created
+        public MetricsSnapshot getMetrics() {
+            return metrics;
+        }
+
+        public String toString() {
+            return status+" f = "+value+" at "+new Vector<>(Scalar.array(x))+" after "+iterations+" iterations, "+(nanos / 1000000.0)+" ms";
+        }
+
+    }
+
+    public static class Result {
+
+        final List<Run> runs;
+        final Run best;
+
+        Result(List<Run> runs) {
+            Run best = null;
+            for (Run run : runs) {
+                if (run.status == Status.FAILED || Double.isNaN(run.value)) continue;
+                if (best == null || run.value < best.value) best = run;
+            }
+            this.runs = Collections.unmodifiableList(runs);
+            this.best = best;
+        }
+
+        /**
+         * Run with the lowest f(x), null when every run failed
+         */
+        public Run getBest() {
+            return best;
+        }
+
+        public Vector<Scalar> getX() {
+            if (best == null) throw new RuntimeException("Every start failed");
+            return new Vector<>(Scalar.array(best.x));
+        }
+
+        public double getValue() {
+            if (best == null) throw new RuntimeException("Every start failed");
+            return best.value;
+        }
+
+        // In the order of the start points
+        public List<Run> getRuns() {
+            return runs;
+        }
+
+        public int count(Status status) {
+            int count = 0;
+            for (Run run : runs) if (run.status == status) count++;
+            return count;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Best: ").append(best);
+            for (int i = 0; i < runs.size(); i++) sb.append("\n  ").append(i).append(": ").append(runs.get(i));
+            return sb.toString();
+        }
+
+    }
+
+    final NFunction func;
+    final SolverFactory factory;
+    final ForkJoinPool pool;
+    int maxIterations = 10000;
+    double target = Double.NEGATIVE_INFINITY;
+    MetricsAggregator metrics;
+
+    public MultiStartOptimizer(NFunction func, SolverFactory factory) {
+        this(func, factory, ForkJoinPool.commonPool());
+    }
+
+    public MultiStartOptimizer(NFunction func, SolverFactory factory, ForkJoinPool pool) {
+        this.func = func;
+        this.factory = factory;
+        this.pool = pool;
+    }
+
+    public MultiStartOptimizer setMaxIterations(int maxIterations) {
+        if (maxIterations < 1) throw new RuntimeException("Need at least one iteration");
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /**
+     * Stop every run once one of them finds f(x) <= target, off (negative infinity) by default
+     */
+    public MultiStartOptimizer setTarget(double target) {
+        this.target = target;
+        return this;
+    }
+
+    /**
+     * Adds the metrics of every run to the given totals, which may be shared with other optimizers
+     */
+    public MultiStartOptimizer setMetrics(MetricsAggregator metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public Result solve(double[][] starts) {
+        AtomicBoolean stop = new AtomicBoolean(false);
+        List<Run> runs = new ArrayList<>(starts.length);
+        List<Callable<Run>> tasks = new ArrayList<>(starts.length);
+        for (double[] start : starts) {
+            Run run = new Run(start.clone());
+            runs.add(run);
+            tasks.add(() -> run(run, stop));
+        }
+
+        for (Future<Run> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the starts", e);
+            } catch (ExecutionException e) {
+                // run() records solver failures itself, anything else is a bug
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return new Result(runs);
+    }
+
+    private Run run(Run run, AtomicBoolean stop) {
+        long nanos = System.nanoTime();
+        boolean checkTarget = target > Double.NEGATIVE_INFINITY;
+        Optimizer solver = null;
+        try {
+            solver = factory.create(new Vector<>(Scalar.array(run.start)));
+            DenseVector xk = null;
+            while (true) {
+                if (solver.isDone()) {
+                    run.status = Status.CONVERGED;
+                    break;
+                }
+                if (stop.get()) {
+                    run.status = Status.CANCELLED;
+                    break;
+                }
+                if (solver.getIteration() >= maxIterations) {
+                    run.status = Status.MAX_ITERATIONS;
+                    break;
+                }
+                xk = solver.iterate();
+                if (checkTarget && solver.getValue() <= target) {
+                    stop.set(true);
+                    run.status = Status.TARGET_REACHED;
+                    break;
+                }
+            }
+            run.iterations = solver.getIteration();
+            // The solver already holds f at its last iterate
+            if (xk != null) {
+                run.x = xk.toArray();
+                run.value = solver.getValue();
+            } else {
+                run.value = func.value(run.x);
+            }
+        } catch (RuntimeException e) {
+            run.status = Status.FAILED;
+            run.error = e;
+        }
+        run.nanos = System.nanoTime() - nanos;
+        if (solver != null) {
+            run.metrics = solver.getMetrics();
+            if (metrics != null) metrics.add(run.metrics);
+        }
+        return run;
+    }
+
+}
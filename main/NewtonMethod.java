@@ -1,99 +1,79 @@
 package main;
 
 import calc.NFunction;
-import calc.NFunctionMatrix;
 import calc.NFunctionVector;
-import generic.Matrix;
-import generic.Scalar;
-import generic.Value;
+import calc.SparseHessian;
+import generic.CholeskyDecomposition;
+import generic.DenseMatrix;
 import generic.Vector;
 
-public class NewtonMethod {
+public class NewtonMethod extends AbstractOptimizer {
 
-    int iteration;
-    NFunction func;
-    Vector<Scalar> guess;
-    NFunctionVector gradient;
-    NFunctionMatrix hessian;
-    boolean done;
+    final SparseHessian hessian;
+
+    final DenseMatrix hk;
+    final CholeskyDecomposition factor;
 
     public NewtonMethod(NFunction func, Vector initial) {
-        this.func = func;
-        this.guess = initial;
-        this.gradient = func.gradient(initial.getSize());
-        this.hessian = func.hessian(initial.getSize());
-        this.iteration = 0;
-        this.done = false;
+        this(func, func.gradient(initial.getSize()), func.sparseHessian(initial.getSize()), initial);
+    }
+
+    /**
+     * Reuses an already derived gradient and Hessian, e.g. ones shared between many solvers
+     */
+    public NewtonMethod(NFunction func, NFunctionVector gradient, SparseHessian hessian, Vector initial) {
+        super(func, gradient, initial, LineSearch.fullStep());
+        this.hessian = hessian;
+        this.hk = new DenseMatrix(work.size, work.size);
+        this.factor = new CholeskyDecomposition(work.size);
     }
 
     private final double EPSILON = 0.0000001;     // Ending Epsilon
 
-    public boolean isDone() {
-        return done;
+    void restart() {
     }
 
-    public int getIteration() {
-        return iteration;
-    }
+    void step() {
+        long t = System.nanoTime();
+        double[] xk = work.x, gk = work.g, pk = work.p, xt = work.xt;
 
-    public Vector<Scalar> iterate() {
-        if (done) {
-            System.out.println("=== Done ===");
-            return guess;
-        }
+        // Calculate the Search Direction
+        evaluateHessian(hessian, xk, hk);
 
-        System.out.println("=== Begin Iteration "+iteration+" ===");
-        Vector<Scalar> xk = guess;
-        Scalar value = func.value(xk);
-        if (iteration == 0) {
-            System.out.println("x"+iteration+" = "+guess);
-            System.out.println("f(x"+iteration+") = "+value);
-            iteration++;
-            return guess;
-        }
+        // Solve hk*pk = -gk, an indefinite hk is shifted to positive definite so pk is always downhill
+        for (int i = 0; i < pk.length; i++) pk[i] = -gk[i];
+        factor.factorModified(hk);
+        factor.solve(pk, pk);
 
-        // Calculate the Search Direction
-        Vector<Scalar> gk = gradient.value(xk);
-        Matrix<Scalar> hk = hessian.value(xk);
-
-        Vector<Value> pk;   Scalar ak;
-        try {
-            Matrix<Value> hki = hk.reciprocal();
-            pk = hki.multiply(gk.negate()).getCol(0);
-            ak = new Scalar(1);
-        } catch (RuntimeException e) {
-            // Steepest descent if non-invertible
-            pk = gk.negate().toValues().asVector();
-            ak = new Scalar(0.01);
-            System.out.println("Non-invertible, using steepest descent");
-        }
-        System.out.println("p"+iteration+" = "+pk);
-        System.out.println("a"+iteration+" = "+ak);
+        t = metrics.direction(t);
+
+        // Full Newton step unless a damping line search was set
+        double ak = search(work.f, dot(gk, pk), 1.0);
 
-        // Update the xk
-        guess = guess.add(pk.multiply(ak)).toScalars();
-        System.out.println("x"+iteration+" = "+guess);
-        System.out.println("f(x"+iteration+") = "+func.value(guess));
+        double fx = evaluateTrial(ak);
+        t = metrics.lineSearch(t);
 
         // Done?
-        gk = gradient.value(guess);
-        double norm = ((Scalar) gk.norm2()).value();
-        double fx = func.value(guess).value();
+        double norm = norm2(work.gt);
         double end = norm / (1 + Math.abs(fx));
         if (end < EPSILON) {
-            System.out.println("Epsilon condition!");
+            note(IterationListener.Note.CONVERGED);
             done = true;
         }
 
         // Limit of double precision
-        Value delta = xk.negate().add(guess.toValues()).norm2();
-        if (((Scalar) delta).value() == 0) {
-            System.out.println("Max precision of double arithmetic");
+        boolean moved = false;
+        for (int i = 0; i < xk.length; i++) moved |= xt[i] != xk[i];
+        if (!moved) {
+            note(IterationListener.Note.PRECISION_LIMIT);
             done = true;
         }
 
-        iteration++;
-        return guess;
+        work.accept();
+        work.f = fx;
+        work.gradNorm = norm;
+        work.step = ak;
+        metrics.update(t);
     }
 
 }
@@ -0,0 +1,51 @@
+package main;
+
+import generic.DenseVector;
+import generic.Scalar;
+import generic.Vector;
+
+/**
+ * Common shape of the iterative solvers. The vectors returned are views of the solver's
+ * workspace, they are overwritten by the next iteration or reset, copy them to keep them.
+ */
+public interface Optimizer {
+
+    boolean isDone();
+
+    int getIteration();
+
+    /**
+     * f at the current estimate xk, NaN before the first iteration
+     */
+    double getValue();
+
+    /**
+     * Performs one iteration and returns the new estimate xk
+     */
+    DenseVector iterate();
+
+    /**
+     * Iterates until done or maxIterations iterations have been made in total
+     */
+    DenseVector solve(int maxIterations);
+
+    default DenseVector solve() {
+        return solve(Integer.MAX_VALUE);
+    }
+
+    void setListener(IterationListener listener);
+
+    MetricsSnapshot getMetrics();
+
+    /**
+     * Restarts from a new point, keeping the derived functions and buffers
+     */
+    void reset(double[] start);
+
+    default void reset(Vector<Scalar> start) {
+        double[] values = new double[start.getSize()];
+        for (int i = 0; i < values.length; i++) values[i] = start.get(i).value();
+        reset(values);
+    }
+
+}
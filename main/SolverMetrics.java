@@ -0,0 +1,61 @@
+package main;
+
+/**
+ * Counters of one solver since it was created or last reset. Plain fields, a solver is
+ * only driven by one thread at a time; use a MetricsAggregator to combine solvers.
+ */
+public class SolverMetrics {
+
+    long iterations;
+    long functionEvaluations, gradientEvaluations, hessianEvaluations;
+    long lineSearchTrials, maxTrials;
+    long directionNanos, lineSearchNanos, updateNanos;
+    boolean converged;
+
+    private long trials;    // In the current iteration
+
+    void trial() {
+        lineSearchTrials++;
+        trials++;
+    }
+
+    void iteration() {
+        iterations++;
+        if (trials > maxTrials) maxTrials = trials;
+        trials = 0;
+    }
+
+    // Phase timers, each adds the time since start and returns now as the start of the next phase
+    long direction(long start) {
+        long now = System.nanoTime();
+        directionNanos += now - start;
+        return now;
+    }
+
+    long lineSearch(long start) {
+        long now = System.nanoTime();
+        lineSearchNanos += now - start;
+        return now;
+    }
+
+    long update(long start) {
+        long now = System.nanoTime();
+        updateNanos += now - start;
+        return now;
+    }
+
+    void clear() {
+        iterations = functionEvaluations = gradientEvaluations = hessianEvaluations = 0;
+        lineSearchTrials = maxTrials = trials = 0;
+        directionNanos = lineSearchNanos = updateNanos = 0;
+        converged = false;
+    }
+
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(1, converged ? 1 : 0, iterations,
+                functionEvaluations, gradientEvaluations, hessianEvaluations,
+                lineSearchTrials, Math.max(maxTrials, trials),
+                directionNanos, lineSearchNanos, updateNanos);
+    }
+
+}
@@ -0,0 +1,34 @@
+package main;
+
+/**
+ * JMX view of a MetricsAggregator
+ */
+public interface SolverMetricsMXBean {
+
+    long getSolves();
+
+    long getConverged();
+
+    long getIterations();
+
+    long getFunctionEvaluations();
+
+    long getGradientEvaluations();
+
+    long getHessianEvaluations();
+
+    long getLineSearchTrials();
+
+    long getMaxTrialsPerIteration();
+
+    double getMeanTrialsPerIteration();
+
+    double getDirectionMillis();
+
+    double getLineSearchMillis();
+
+    double getUpdateMillis();
+
+    void reset();
+
+}
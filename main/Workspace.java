@@ -0,0 +1,60 @@
+package main;
+
+import generic.DenseVector;
+
+/**
+ * Preallocated buffers of a solver, sized once for the problem dimension
+ * so that iterations and restarts do not allocate
+ */
+public class Workspace {
+
+    final int size;
+    final double[] x;       // xk
+    final double[] g;       // g(xk)
+    final double[] p;       // pk, search direction
+    final double[] xt;      // Trial point xk + ak*pk
+    final double[] gt;      // g(xt)
+    final DenseVector point, direction, trialPoint;     // Views of x, p and xt
+    double f;               // f(xk)
+    double gradNorm;        // |g(xk)|, NaN until evaluated
+    double step;            // ak, step taken to reach xk
+
+    public Workspace(int size) {
+        if (size <= 0) throw new RuntimeException("Zero dimension");
+        this.size = size;
+        this.x = new double[size];
+        this.g = new double[size];
+        this.p = new double[size];
+        this.xt = new double[size];
+        this.gt = new double[size];
+        this.point = DenseVector.wrap(x);
+        this.direction = DenseVector.wrap(p);
+        this.trialPoint = DenseVector.wrap(xt);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    void load(double[] start) {
+        if (start.length != size) throw new RuntimeException("Start point has "+start.length+" variables, solver has "+size);
+        System.arraycopy(start, 0, x, 0, size);
+        f = gradNorm = step = Double.NaN;
+    }
+
+    /**
+     * Accepts the trial point, xk = xt and g(xk) = g(xt)
+     */
+    void accept() {
+        System.arraycopy(xt, 0, x, 0, size);
+        System.arraycopy(gt, 0, g, 0, size);
+    }
+
+    /**
+     * xt = xk + step*pk
+     */
+    void trial(double step) {
+        for (int i = 0; i < size; i++) xt[i] = x[i] + step*p[i];
+    }
+
+}
@@ -0,0 +1,22 @@
+package calc;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NPolyTermTest {
+
+	@Test
+	void reciprocalNegatesExponents() {
+		// Used to keep the exponents and only invert the coefficient
+		NPolyTerm term = NPolyTerm.fromString("2*x[1]^2*x[3]");
+		NPolyTerm recip = term.reciprocal();
+		double[] x = {2, 5, 3};
+		assertEquals(24, term.value(x), 1e-12);
+		assertEquals(1.0/24, recip.value(x), 1e-12);
+		assertEquals(-2, recip.getPower(1), 0);
+		assertEquals(-1, recip.getPower(3), 0);
+		assertEquals(term.value(x), recip.reciprocal().value(x), 1e-12);
+	}
+
+}
@@ -0,0 +1,49 @@
+package calc;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class PolynomialCodegenTest {
+
+	/**
+	 * Chained Rosenbrock, sum of 100*(x[i+1] - x[i]^2)^2 + (1 - x[i])^2
+	 */
+	static NPolynomial rosenbrock(int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < n; i++) {
+			if (i > 1) sb.append(" + ");
+			sb.append("100*x[").append(i+1).append("]^2 - 200*x[").append(i).append("]^2*x[").append(i+1)
+					.append("] + 100*x[").append(i).append("]^4 + 1 - 2*x[").append(i).append("] + x[").append(i).append("]^2");
+		}
+		return NPolynomial.fromString(sb.toString());
+	}
+
+	static double[] point(int n) {
+		double[] x = new double[n];
+		for (int i = 0; i < n; i++) x[i] = (i % 2 == 0) ? -1.2 : 1;
+		return x;
+	}
+
+	@Test
+	void generatesSmallPolynomials() {
+		NPolynomial poly = rosenbrock(8);
+		PolynomialEvaluator generated = PolynomialCodegen.generate(poly);
+		assertInstanceOf(GeneratedPolynomial.class, generated);
+
+		double[] x = point(8), g = new double[8], expected = new double[8];
+		assertEquals(poly.compile().eval(x), generated.eval(x), 1e-9);
+		assertEquals(poly.compile().valueAndGradient(x, expected), generated.valueAndGradient(x, g), 1e-9);
+		assertArrayEquals(expected, g, 1e-9);
+	}
+
+	@Test
+	void fallsBackAboveHugeMethodLimit() {
+		// Generated code of n=200 is far past the 8000 bytes HotSpot compiles, interpreted it ran 3.5x slower
+		NPolynomial poly = rosenbrock(200);
+		assertInstanceOf(CompiledPolynomial.class, PolynomialCodegen.generate(poly));
+	}
+
+}
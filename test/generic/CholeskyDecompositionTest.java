@@ -0,0 +1,59 @@
+package generic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CholeskyDecompositionTest {
+
+    @Test
+    void factorsPositiveDefinite() {
+        CholeskyDecomposition chol = new CholeskyDecomposition(new DenseMatrix(new double[][] {{4, 2}, {2, 3}}));
+        assertTrue(chol.isPositiveDefinite());
+        assertEquals(8, chol.determinant(), 1e-12);
+    }
+
+    @Test
+    void shiftsIndefinite() {
+        CholeskyDecomposition chol = new CholeskyDecomposition(2);
+        chol.factorModified(new DenseMatrix(new double[][] {{-1, 0}, {0, 1}}));
+        assertTrue(chol.isPositiveDefinite());
+        assertTrue(chol.getShift() > 1);
+    }
+
+    @Test
+    void plainFactorRejectsNaN() {
+        CholeskyDecomposition chol = new CholeskyDecomposition(new DenseMatrix(new double[][] {{Double.NaN, 0}, {0, 1}}));
+        assertFalse(chol.isPositiveDefinite());
+    }
+
+    @Test
+    @Timeout(5)
+    void modifiedRejectsNaN() {
+        CholeskyDecomposition chol = new CholeskyDecomposition(2);
+        assertThrows(RuntimeException.class, () -> chol.factorModified(new DenseMatrix(new double[][] {{Double.NaN, 0}, {0, 1}})));
+        assertThrows(RuntimeException.class, () -> chol.factorModified(new DenseMatrix(new double[][] {{1, 0}, {Double.NaN, 1}})));
+    }
+
+    @Test
+    @Timeout(5)
+    void modifiedRejectsInfinity() {
+        CholeskyDecomposition chol = new CholeskyDecomposition(2);
+        assertThrows(RuntimeException.class, () -> chol.factorModified(new DenseMatrix(new double[][] {{Double.POSITIVE_INFINITY, 0}, {0, 1}})));
+        assertThrows(RuntimeException.class, () -> chol.factorModified(new DenseMatrix(new double[][] {{1, 0}, {0, Double.NEGATIVE_INFINITY}})));
+    }
+
+    @Test
+    @Timeout(5)
+    void modifiedGivesUpOnOverflow() {
+        // Finite entries whose products overflow, no finite shift makes the factorization succeed
+        CholeskyDecomposition chol = new CholeskyDecomposition(2);
+        double big = Double.MAX_VALUE;
+        assertThrows(RuntimeException.class, () -> chol.factorModified(new DenseMatrix(new double[][] {{-big, 0}, {big, -big}})));
+    }
+
+}
@@ -0,0 +1,56 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MoreThuenteLineSearchTest {
+
+    /**
+     * phi(a) = -a + 1 - cos(k*a), slopes swing too far for the curvature condition. Remembers the
+     * lowest trial with sufficient decrease.
+     */
+    static final class WavyLine implements LineSearch.Line {
+
+        final double k;
+        double slope, best = Double.POSITIVE_INFINITY;
+        boolean accepted;
+
+        WavyLine(double k) {
+            this.k = k;
+        }
+
+        public double value(double step) {
+            return -step + 1 - Math.cos(k*step);
+        }
+
+        public double valueAndSlope(double step) {
+            slope = -1 + k*Math.sin(k*step);
+            return value(step);
+        }
+
+        public double slope() {
+            return slope;
+        }
+
+        public double minStep() {
+            return 1e-12;
+        }
+
+        public void trial(double step, double value, int failed) {
+            accepted |= failed == 0;
+            if (value <= -LineSearch.C1*step) best = Math.min(best, value);
+        }
+
+    }
+
+    @Test
+    void failureReturnsBestStep() {
+        WavyLine line = new WavyLine(25.62890625);
+        double step = new MoreThuenteLineSearch(LineSearch.C1, 0.1).search(line, 0, -1, 0.24137569);
+        assertFalse(line.accepted);
+        assertEquals(line.best, line.value(step));
+    }
+
+}